@@ -0,0 +1,115 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.config.SecondLevelCacheConfig;
+import com.wolox.training.exception.BookAlreadyOwnedException;
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares adding a favorite through the entity, which loads every favorite of the user, with the insert of the
+ * single user_book row, for a user with 10k favorites in an in memory database. Both remove the favorite with the
+ * single row delete, so every invocation starts with the same favorites. Run with "./gradlew jmh"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FavoriteBooksBenchmark {
+
+    @Param({"10000"})
+    public int favorites;
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private BookRepository bookRepository;
+    private TransactionTemplate transaction;
+    private int userId;
+    private int bookId;
+
+    @Setup
+    public void setup() {
+        // Without the application properties, which point to the production database
+        context = new SpringApplicationBuilder(Config.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.config.name=favorite-books-benchmark",
+                        "--spring.datasource.url=jdbc:h2:mem:favorites;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop");
+        userRepository = context.getBean(UserRepository.class);
+        bookRepository = context.getBean(BookRepository.class);
+        transaction = context.getBean(TransactionTemplate.class);
+
+        User user = new User();
+        user.setUsername("username");
+        user.setName("name");
+        user.setBirthDate(LocalDate.of(1990, 1, 1));
+        user.setPassword("123456");
+        userId = userRepository.save(user).getId();
+        bookId = bookRepository.save(new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "added")).getId();
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("insert into book (genre, author, image, title, sub_title, publisher, year, pages, isbn) " +
+                "select 'genre', 'author', 'image', 'title', 'subtitle', 'publisher', '2020', 100, 'isbn' || x " +
+                "from system_range(1, " + favorites + ")");
+        // The column book_id of the join table references the user and user_id the book
+        jdbcTemplate.execute("insert into user_book (book_id, user_id) select " + userId + ", id from book where isbn like 'isbn%'");
+    }
+
+    @TearDown
+    public void teardown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int singleRow() {
+        userRepository.addFavorite(userId, bookId);
+        return userRepository.removeFavorite(userId, bookId);
+    }
+
+    @Benchmark
+    public int entity() {
+        transaction.executeWithoutResult(status -> {
+            User user = userRepository.findById(userId).orElseThrow(IllegalStateException::new);
+            try {
+                user.addBook(bookRepository.findById(bookId).orElseThrow(IllegalStateException::new));
+            } catch (BookAlreadyOwnedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return userRepository.removeFavorite(userId, bookId);
+    }
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            TransactionAutoConfiguration.class, JdbcTemplateAutoConfiguration.class})
+    @EntityScan(basePackageClasses = Book.class)
+    @EnableJpaRepositories(basePackageClasses = UserRepository.class)
+    @Import(SecondLevelCacheConfig.class)
+    static class Config {
+    }
+}
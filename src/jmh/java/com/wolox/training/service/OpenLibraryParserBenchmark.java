@@ -0,0 +1,92 @@
+package com.wolox.training.service;
+
+import com.wolox.training.dto.BookDTO;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the {@link JSONObject} parsing of the external api response against {@link OpenLibraryParser}.
+ * Run with "./gradlew jmh", the gc profiler reports the allocation rate of each one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OpenLibraryParserBenchmark {
+
+    @Param({"1", "50"})
+    public int books;
+
+    private byte[] body;
+    private List<String> isbns;
+
+    @Setup
+    public void setup() {
+        isbns = IntStream.range(0, books)
+                .mapToObj(i -> String.format("%010d", i))
+                .collect(Collectors.toList());
+        body = isbns.stream()
+                .map(isbn -> "\"ISBN:" + isbn + "\":" + book(isbn))
+                .collect(Collectors.joining(",", "{", "}"))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void jsonObject(Blackhole blackhole) {
+        JSONObject json = new JSONObject(new String(body, StandardCharsets.UTF_8));
+        for (String isbn : isbns) {
+            blackhole.consume(new BookDTO(isbn, json.getJSONObject("ISBN:" + isbn)));
+        }
+    }
+
+    @Benchmark
+    public Map<String, BookDTO> streaming() throws Exception {
+        return OpenLibraryParser.parse(new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds a book like the ones of the "jscmd=data" responses, with the subjects, identifiers and table of
+     * contents that make multi edition responses large
+     */
+    private static String book(String isbn) {
+        String subjects = IntStream.range(0, 20)
+                .mapToObj(i -> "{\"name\":\"Subject " + i + "\",\"url\":\"https://openlibrary.org/subjects/subject_" + i + "\"}")
+                .collect(Collectors.joining(","));
+        String contents = IntStream.range(0, 30)
+                .mapToObj(i -> "{\"level\":0,\"label\":\"\",\"title\":\"Chapter " + i + "\",\"pagenum\":\"" + i * 10 + "\"}")
+                .collect(Collectors.joining(","));
+        return "{" +
+                "\"url\":\"https://openlibrary.org/books/OL" + isbn + "M/title\"," +
+                "\"key\":\"/books/OL" + isbn + "M\"," +
+                "\"title\":\"Title " + isbn + "\"," +
+                "\"subtitle\":\"Subtitle " + isbn + "\"," +
+                "\"authors\":[{\"url\":\"https://openlibrary.org/authors/OL1A/author\",\"name\":\"Author One\"}," +
+                "{\"url\":\"https://openlibrary.org/authors/OL2A/author\",\"name\":\"Author Two\"}]," +
+                "\"number_of_pages\":320," +
+                "\"pagination\":\"320 p. :\"," +
+                "\"identifiers\":{\"isbn_10\":[\"" + isbn + "\"],\"openlibrary\":[\"OL" + isbn + "M\"],\"goodreads\":[\"979250\"]}," +
+                "\"classifications\":{\"lc_classifications\":[\"BQ9265.6 .T7313 1994\"],\"dewey_decimal_class\":[\"294.3/927\"]}," +
+                "\"publishers\":[{\"name\":\"Publisher\"}]," +
+                "\"publish_places\":[{\"name\":\"New York\"}]," +
+                "\"publish_date\":\"1994\"," +
+                "\"subjects\":[" + subjects + "]," +
+                "\"table_of_contents\":[" + contents + "]," +
+                "\"cover\":{\"small\":\"https://covers.openlibrary.org/b/id/1-S.jpg\",\"large\":\"https://covers.openlibrary.org/b/id/1-L.jpg\"}" +
+                "}";
+    }
+}
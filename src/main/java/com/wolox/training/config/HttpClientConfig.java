@@ -0,0 +1,100 @@
+package com.wolox.training.config;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This class configures the shared {@link CloseableHttpAsyncClient} used to call external apis, backed by a bounded
+ * connection pool that keeps connections alive between calls. The responses are awaited by a few I/O threads, so the
+ * calls in progress don't hold a thread each
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Value("${external.api.connect-timeout:2000}")
+    private int connectTimeout;
+
+    @Value("${external.api.read-timeout:5000}")
+    private int readTimeout;
+
+    @Value("${external.api.pool-timeout:1000}")
+    private int poolTimeout;
+
+    @Value("${external.api.keep-alive:30000}")
+    private long keepAlive;
+
+    @Value("${external.api.pool.max-total:100}")
+    private int maxTotal;
+
+    @Value("${external.api.pool.max-per-route:50}")
+    private int maxPerRoute;
+
+    @Value("${external.api.io-threads:2}")
+    private int ioThreads;
+
+    /**
+     * The closed connections are detected by the I/O threads and the expired ones are discarded when leased, so
+     * there is no idle connection evictor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public PoolingNHttpClientConnectionManager connectionManager() throws IOReactorException {
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(connectTimeout)
+                .setSoTimeout(readTimeout)
+                .build();
+
+        PoolingNHttpClientConnectionManager connectionManager =
+                new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig));
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpAsyncClient httpClient(PoolingNHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(poolTimeout)
+                .build();
+
+        CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy())
+                .build();
+        httpClient.start();
+        return httpClient;
+    }
+
+    /**
+     * Exports leased, available, pending and max connections of the pool
+     */
+    @Bean
+    public MeterBinder httpClientPoolMetrics(PoolingNHttpClientConnectionManager connectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "openlibrary");
+    }
+
+    /**
+     * Honors the Keep-Alive header sent by the server, never keeping a connection longer than the configured value
+     */
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+        };
+    }
+}
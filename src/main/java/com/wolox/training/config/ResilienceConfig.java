@@ -0,0 +1,139 @@
+package com.wolox.training.config;
+
+import com.wolox.training.exception.ExternalApiException;
+import com.wolox.training.service.RequestHedger;
+import com.wolox.training.service.RetryBudget;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * This class configures the circuit breaker, the bulkhead, the retry budget and the request hedging that protect the
+ * application when the external api slows down or fails
+ */
+@Configuration
+public class ResilienceConfig {
+
+    private static final String OPEN_LIBRARY = "openlibrary";
+
+    @Value("${external.api.circuit-breaker.failure-rate:50}")
+    private float failureRate;
+
+    @Value("${external.api.circuit-breaker.slow-call-rate:80}")
+    private float slowCallRate;
+
+    @Value("${external.api.circuit-breaker.slow-call-duration:3000}")
+    private long slowCallDuration;
+
+    @Value("${external.api.circuit-breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${external.api.circuit-breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${external.api.circuit-breaker.open-duration:30000}")
+    private long openDuration;
+
+    @Value("${external.api.circuit-breaker.half-open-calls:3}")
+    private int halfOpenCalls;
+
+    @Value("${external.api.bulkhead.max-concurrent:20}")
+    private int maxConcurrent;
+
+    @Value("${external.api.bulkhead.max-wait:0}")
+    private long maxWait;
+
+    @Value("${external.api.retry.budget.max-tokens:10}")
+    private double maxRetryTokens;
+
+    @Value("${external.api.retry.budget.token-ratio:0.1}")
+    private double retryTokenRatio;
+
+    @Value("${external.api.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${external.api.hedge.percentile:95}")
+    private double hedgePercentile;
+
+    @Value("${external.api.hedge.max-rate:0.05}")
+    private double hedgeMaxRate;
+
+    @Value("${external.api.hedge.min-samples:50}")
+    private int hedgeMinSamples;
+
+    @Value("${external.api.hedge.window:500}")
+    private int hedgeWindow;
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry() {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRate)
+                .slowCallRateThreshold(slowCallRate)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallDuration))
+                .slidingWindowSize(windowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .waitDurationInOpenState(Duration.ofMillis(openDuration))
+                .permittedNumberOfCallsInHalfOpenState(halfOpenCalls)
+                .recordExceptions(IOException.class, ExternalApiException.class)
+                .build();
+        return CircuitBreakerRegistry.of(config);
+    }
+
+    @Bean
+    public CircuitBreaker openLibraryCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return circuitBreakerRegistry.circuitBreaker(OPEN_LIBRARY);
+    }
+
+    /**
+     * Limits the calls to the external api in progress at the same time, the rest fail fast. The calls don't hold a
+     * thread while they wait the response, so the max wait should stay 0 to never block the caller
+     */
+    @Bean
+    public BulkheadRegistry bulkheadRegistry() {
+        BulkheadConfig config = BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrent)
+                .maxWaitDuration(Duration.ofMillis(maxWait))
+                .build();
+        return BulkheadRegistry.of(config);
+    }
+
+    @Bean
+    public Bulkhead openLibraryBulkhead(BulkheadRegistry bulkheadRegistry) {
+        return bulkheadRegistry.bulkhead(OPEN_LIBRARY);
+    }
+
+    @Bean
+    public RetryBudget openLibraryRetryBudget() {
+        return new RetryBudget(OPEN_LIBRARY, maxRetryTokens, retryTokenRatio);
+    }
+
+    /**
+     * Disabled by default, when enabled a request slower than the configured percentile is sent again
+     */
+    @Bean
+    public RequestHedger openLibraryRequestHedger() {
+        return new RequestHedger(OPEN_LIBRARY, hedgeEnabled, hedgePercentile, hedgeMaxRate, hedgeMinSamples, hedgeWindow);
+    }
+
+    @Bean
+    public MeterBinder circuitBreakerMetrics(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry);
+    }
+
+    @Bean
+    public MeterBinder bulkheadMetrics(BulkheadRegistry bulkheadRegistry) {
+        return TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry);
+    }
+}
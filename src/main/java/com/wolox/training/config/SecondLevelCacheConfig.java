@@ -0,0 +1,83 @@
+package com.wolox.training.config;
+
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.JCacheRegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * This class configures the Hibernate second level cache: one local region for {@link Book}, one for {@link User}
+ * and one for the books of each user, each bounded in entries and expiring after a time to live. The statistics are
+ * enabled so the hits, misses and puts of each region are exported as metrics
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+
+    public static final String BOOK_REGION = Book.class.getName();
+    public static final String USER_REGION = User.class.getName();
+    public static final String USER_BOOKS_REGION = User.class.getName() + ".books";
+
+    @Value("${jpa.cache.book.max-entries:10000}")
+    private long bookEntries;
+
+    @Value("${jpa.cache.book.ttl:3600000}")
+    private long bookTtl;
+
+    @Value("${jpa.cache.user.max-entries:10000}")
+    private long userEntries;
+
+    @Value("${jpa.cache.user.ttl:600000}")
+    private long userTtl;
+
+    @Value("${jpa.cache.user-books.max-entries:10000}")
+    private long userBooksEntries;
+
+    @Value("${jpa.cache.user-books.ttl:600000}")
+    private long userBooksTtl;
+
+    /**
+     * Each application context gets its own cache manager, so the regions are never shared between contexts
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        return provider.getCacheManager(URI.create("urn:hibernate:" + UUID.randomUUID()), ConfigurationBuilder.newConfigurationBuilder()
+                .withCache(BOOK_REGION, region(bookEntries, bookTtl))
+                .withCache(USER_REGION, region(userEntries, userTtl))
+                .withCache(USER_BOOKS_REGION, region(userBooksEntries, userBooksTtl))
+                .build());
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, JCacheRegionFactory.class.getName());
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+
+    private static CacheConfiguration<Object, Object> region(long entries, long ttl) {
+        return CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(entries))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(ttl)))
+                .build();
+    }
+}
@@ -0,0 +1,65 @@
+package com.wolox.training.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class reports at startup the values repeated in the columns of the unique indexes. The schema is updated by
+ * Hibernate, which only logs a warning when an index can't be created because of rows stored before it, and the
+ * application keeps running without it. The repeated rows have to be merged or removed by hand and the application
+ * restarted, so the index is created
+ */
+@Component
+public class UniqueIndexCheck implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UniqueIndexCheck.class);
+    private static final int SAMPLE_SIZE = 10;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${jpa.unique-check.fail-on-duplicates:false}")
+    private boolean failOnDuplicates;
+
+    /**
+     * This method logs the repeated values of each unique index, or stops the startup when
+     * "jpa.unique-check.fail-on-duplicates" is enabled
+     *
+     * @throws IllegalStateException: When there are repeated values and the startup must fail
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> repeated = new ArrayList<>();
+        repeated.addAll(repeated("ux_book_isbn", "book", "isbn"));
+        repeated.addAll(repeated("ux_users_username", "users", "username"));
+        if (repeated.isEmpty()) {
+            return;
+        }
+
+        String message = "Repeated values prevent creating the unique indexes, remove them and restart: " + String.join("; ", repeated);
+        if (failOnDuplicates) {
+            throw new IllegalStateException(message);
+        }
+        LOGGER.error(message);
+    }
+
+    private List<String> repeated(String index, String table, String column) {
+        String grouped = "select " + column + " from " + table + " group by " + column + " having count(*) > 1";
+        Integer count = jdbcTemplate.queryForObject("select count(*) from (" + grouped + ") repeated", Integer.class);
+        if (count == null || count == 0) {
+            return List.of();
+        }
+
+        List<String> sample = jdbcTemplate.queryForList(grouped + " order by " + column + " limit " + SAMPLE_SIZE, String.class);
+        return List.of(index + " has " + count + " repeated " + column + " values, e.g. " + String.join(", ", sample));
+    }
+}
@@ -0,0 +1,31 @@
+package com.wolox.training.controller;
+
+import com.wolox.training.dto.TokenDTO;
+import com.wolox.training.security.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.TimeUnit;
+
+@RestController
+@RequestMapping(value = "api/auth", produces = MediaType.APPLICATION_JSON_VALUE)
+public class AuthController {
+
+    @Autowired
+    private TokenService tokenService;
+
+    /**
+     * This method issues an access token for the user authenticated with Basic auth, the next requests send it in the
+     * header "Authorization: Bearer token" and skip the password verification until it expires
+     *
+     * @return The {@link TokenDTO} with the access token and the seconds until it expires
+     */
+    @PostMapping("login")
+    public TokenDTO login(Authentication authentication) {
+        return new TokenDTO(tokenService.issue(authentication.getName()), TimeUnit.MILLISECONDS.toSeconds(tokenService.getTtl()));
+    }
+}
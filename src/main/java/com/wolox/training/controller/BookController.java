@@ -1,16 +1,35 @@
 package com.wolox.training.controller;
 
 import com.wolox.training.dto.BookDTO;
+import com.wolox.training.dto.BookResolveDTO;
+import com.wolox.training.dto.CursorPageDTO;
+import com.wolox.training.dto.ImportReportDTO;
+import com.wolox.training.dto.TotalMode;
+import com.wolox.training.dto.UserSummaryDTO;
 import com.wolox.training.exception.BookIdMismatchException;
 import com.wolox.training.exception.BookNotFoundException;
 import com.wolox.training.exception.ExternalApiException;
+import com.wolox.training.exception.InvalidCursorException;
+import com.wolox.training.exception.InvalidFieldException;
+import com.wolox.training.exception.TooManyOperationsException;
 import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
 import com.wolox.training.repository.BookRepository;
-import com.wolox.training.service.OpenLibraryService;
+import com.wolox.training.repository.BookSpecifications;
+import com.wolox.training.repository.UserRepository;
+import com.wolox.training.repository.UserSpecifications;
+import com.wolox.training.service.BookBulkImportService;
+import com.wolox.training.service.BookExportService;
+import com.wolox.training.service.BookImportService;
+import com.wolox.training.service.BookQueryCache;
+import com.wolox.training.service.CountCache;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -23,20 +42,51 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping(value = "api/book")
 public class BookController {
 
+    private static final String BOOKS = "books";
+
     @Autowired
     private BookRepository bookRepository;
 
     @Autowired
-    private OpenLibraryService openLibraryService;
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private BookBulkImportService bookBulkImportService;
+
+    @Autowired
+    private BookExportService bookExportService;
+
+    @Autowired
+    private CountCache countCache;
+
+    @Autowired
+    private BookQueryCache bookQueryCache;
+
+    @Value("${books.export.timeout:3600000}")
+    private long exportTimeout;
 
     /**
      * This method return a list of {@link Book} following the next Optional params:
@@ -51,11 +101,13 @@ public class BookController {
      * @param subtitle: The Subtitle of Book
      * @param title: The title of Book
      * @param year: The year of publish of Book
+     * @param total: EXACT counts the books, NONE returns a slice without total and CACHED reuses a recent count when
+     *             there are no filters. The EXACT pages are kept in the {@link BookQueryCache}
      *
      * @return The List of {@link Book} filtered with Optional parameters passed
      */
     @GetMapping
-    public Page<Book> findAll(
+    public Slice<Book> findAll(
             @RequestParam(required = false) Integer id,
             @RequestParam(required = false) String author,
             @RequestParam(required = false) String genre,
@@ -68,55 +120,199 @@ public class BookController {
             @RequestParam(required = false) String year,
             @RequestParam(defaultValue = "0") Integer from,
             @RequestParam(defaultValue = "5") Integer size,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "EXACT") TotalMode total
+    ) {
+        PageRequest pageRequest = PageRequest.of(from, size, Sort.by(sort));
+        boolean filtered = Stream.of(id, author, genre, image, isbn, publisher, subtitle, title, year).anyMatch(Objects::nonNull)
+                || (Objects.nonNull(pages) && pages > 0);
+        if (total == TotalMode.NONE || (total == TotalMode.CACHED && !filtered)) {
+            Slice<Book> slice = bookRepository.findSlice(
+                    BookSpecifications.filter(id, author, genre, image, isbn, pages, publisher, subtitle, title, year),
+                    pageRequest);
+            return total == TotalMode.NONE ? slice : countCache.page(slice, BOOKS, bookRepository::count);
+        }
+
+        return bookQueryCache.page(
+                BookQueryCache.filters(id, author, genre, image, isbn, pages, publisher, subtitle, title, year),
+                pageRequest,
+                () -> bookRepository.findAll(
+                        id,
+                        author,
+                        genre,
+                        image,
+                        isbn,
+                        (Objects.nonNull(pages) && pages > 0) ? pages : 0,
+                        publisher,
+                        subtitle,
+                        title,
+                        year,
+                        pageRequest
+                ));
+    }
+
+    /**
+     * This method return a page of {@link Book} filtered like {@link #findAll}, reading and returning only the
+     * requested fields of each book
+     *
+     * @param fields: The fields of the books to return, like id,title
+     * @param total: EXACT counts the books, NONE returns a slice without total and CACHED reuses a recent count when
+     *             there are no filters
+     * @return The page with the values of the fields of each book
+     * @throws InvalidFieldException: When a field is not an attribute of the book
+     */
+    @GetMapping(params = {"fields", "!cursor"})
+    public Slice<Map<String, Object>> findAllFields(
+            @RequestParam(required = false) Integer id,
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) String genre,
+            @RequestParam(required = false) String image,
+            @RequestParam(required = false) String isbn,
+            @RequestParam(required = false) Integer pages,
+            @RequestParam(required = false) String publisher,
+            @RequestParam(required = false) String subtitle,
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String year,
+            @RequestParam List<String> fields,
+            @RequestParam(defaultValue = "0") Integer from,
+            @RequestParam(defaultValue = "5") Integer size,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "EXACT") TotalMode total
+    ) throws InvalidFieldException {
+        boolean filtered = Stream.of(id, author, genre, image, isbn, publisher, subtitle, title, year).anyMatch(Objects::nonNull)
+                || (Objects.nonNull(pages) && pages > 0);
+        return fields(BookSpecifications.filter(id, author, genre, image, isbn, pages, publisher, subtitle, title, year),
+                filtered, fields, PageRequest.of(from, size, Sort.by(sort)), total);
+    }
+
+    /**
+     * This method return a page of {@link Book} filtered like {@link #findAll}, seeking from the position of the cursor
+     * instead of skipping the previous rows, so deep pages cost the same as the first one
+     *
+     * @param cursor: The next cursor of the previous page, empty for the first page
+     * @param size: Size list of expected result
+     * @param sort: Field by sort, the cursor only works with the sort it was created
+     *
+     * @return The {@link CursorPageDTO} with the books and the cursor of the next page
+     * @throws InvalidCursorException: When the cursor is invalid or the sort can't be used with cursors
+     */
+    @GetMapping(params = "cursor")
+    public CursorPageDTO<Book> findAllByCursor(
+            @RequestParam(required = false) Integer id,
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) String genre,
+            @RequestParam(required = false) String image,
+            @RequestParam(required = false) String isbn,
+            @RequestParam(required = false) Integer pages,
+            @RequestParam(required = false) String publisher,
+            @RequestParam(required = false) String subtitle,
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String year,
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "5") Integer size,
             @RequestParam(defaultValue = "id") String sort
+    ) throws InvalidCursorException {
+        return bookRepository.seek(
+                BookSpecifications.filter(id, author, genre, image, isbn, pages, publisher, subtitle, title, year),
+                sort, cursor, size);
+    }
+
+    /**
+     * This method writes every {@link Book} filtered like {@link #findAll} as NDJSON, one book per line sorted by id.
+     * The books are written while they are read, so the catalog can be copied with a single request. The export is
+     * bounded by "books.export.timeout" instead of the timeout of the rest of the async requests
+     *
+     * @return The task that writes the books after the request thread is released
+     */
+    @GetMapping(value = "export", produces = BookBulkImportService.NDJSON)
+    public WebAsyncTask<Void> export(
+            @RequestParam(required = false) Integer id,
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) String genre,
+            @RequestParam(required = false) String image,
+            @RequestParam(required = false) String isbn,
+            @RequestParam(required = false) Integer pages,
+            @RequestParam(required = false) String publisher,
+            @RequestParam(required = false) String subtitle,
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String year,
+            HttpServletResponse response
     ) {
-        return bookRepository.findAll(
-                id,
-                author,
-                genre,
-                image,
-                isbn,
-                (Objects.nonNull(pages) && pages > 0) ? pages : 0,
-                publisher,
-                subtitle,
-                title,
-                year,
-                PageRequest.of(from, size, Sort.by(sort))
-        );
+        Specification<Book> spec = BookSpecifications.filter(id, author, genre, image, isbn, pages, publisher, subtitle, title, year);
+        return new WebAsyncTask<>(exportTimeout, () -> {
+            response.setContentType(BookBulkImportService.NDJSON);
+            bookExportService.export(spec, response.getOutputStream());
+            return null;
+        });
     }
 
     /**
      * This method find a {@link Book} by isbn code passed as param and follow the next performance:
      * - If Book exist in database, retrieves the book
      * - If book don't exist in database, search in external api, create and retrieves the book
+     * Concurrent requests for the same isbn share a single external api call and a single insert. The request thread
+     * is released while the external api responds, the response is written when the future completes
      *
      * @param isbn: The code of Book
-     * @return The {@link Book} with Isbn passed of param
-     * @throws IOException:           When has errors with the external api
-     * @throws BookNotFoundException: When book not found neither database nor external api
+     * @return The future of the {@link Book} with Isbn passed of param, it fails with {@link BookNotFoundException}
+     * when book not found neither database nor external api, and with {@link IOException} or
+     * {@link ExternalApiException} when has errors with the external api
      */
     @GetMapping("{isbn}")
-    public ResponseEntity<BookDTO> findBookByIsbn(@PathVariable(name = "isbn") String isbn) throws IOException, BookNotFoundException, ExternalApiException {
-        Optional<Book> optionalBook = bookRepository.findByIsbn(isbn);
-        if (optionalBook.isPresent()) {
-            return ResponseEntity.ok(new BookDTO(optionalBook.get()));
-        }
-
-        BookDTO dto = openLibraryService.bookInfo(isbn);
+    public CompletableFuture<ResponseEntity<BookDTO>> findBookByIsbn(@PathVariable(name = "isbn") String isbn) {
+        return bookImportService.importByIsbnAsync(isbn)
+                .thenApply(result -> ResponseEntity.status(result.isCreated() ? HttpStatus.CREATED : HttpStatus.OK).body(result.getBook()));
+    }
 
-        Book book = new Book();
-        book.setIsbn(dto.getIsbn());
-        book.setYear(dto.getPublishDate());
-        book.setTitle(dto.getTitle());
-        book.setSubTitle(dto.getSubtitle());
-        book.setAuthor(dto.getAuthors().get(0));
-        book.setPublisher(dto.getPublishers().get(0));
-        book.setPages(dto.getNumberOfPages());
-        book.setImage(dto.getImageUrl());
+    /**
+     * This method resolves a list of isbn codes at once, creating the books not stored yet from the external api
+     *
+     * @param isbns: The codes of the books to resolve
+     * @return The {@link BookResolveDTO} with the books found, the isbn codes created and the not found
+     * @throws IOException:                When has errors with the external api
+     * @throws ExternalApiException:       When the external api responds with error
+     * @throws TooManyOperationsException: When the list exceeds the max number of isbn codes
+     */
+    @PostMapping("resolve")
+    public BookResolveDTO resolve(@RequestBody List<String> isbns) throws IOException, ExternalApiException, TooManyOperationsException {
+        return bookImportService.resolve(isbns);
+    }
 
-        bookRepository.save(book);
+    /**
+     * This method retrieves a page of the {@link User} that have the {@link Book} as favorite, paginated by cursor,
+     * without loading the favorites of each user
+     *
+     * @param id:       Id of the book
+     * @param begin:    Begin date as first date in the range of birth dates
+     * @param end:      End date as last date in the range of birth dates
+     * @param sequence: Characters sequence must contain the name of the user
+     * @param cursor:   The next cursor of the previous page, empty or absent for the first page
+     * @param size:     Size list of expected result
+     * @param sort:     Field by sort, the cursor only works with the sort it was created
+     * @return The {@link CursorPageDTO} with the users and the cursor of the next page
+     * @throws BookNotFoundException:  When the book not found with id param passed
+     * @throws InvalidCursorException: When the cursor is invalid or the sort can't be used with cursors
+     */
+    @GetMapping("{id}/users")
+    public CursorPageDTO<UserSummaryDTO> findUsers(
+            @PathVariable(name = "id") int id,
+            @RequestParam(name = "begin", required = false) String begin,
+            @RequestParam(name = "end", required = false) String end,
+            @RequestParam(name = "sequence", required = false) String sequence,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(defaultValue = "5") Integer size,
+            @RequestParam(defaultValue = "id") String sort
+    ) throws BookNotFoundException, InvalidCursorException {
+        if (!bookRepository.existsById(id)) {
+            throw new BookNotFoundException("Book Not found");
+        }
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(dto);
+        Specification<User> spec = Specification.where(UserSpecifications.withFavorite(id))
+                .and(UserSpecifications.search(
+                        Objects.nonNull(begin) ? LocalDate.parse(begin) : null,
+                        Objects.nonNull(end) ? LocalDate.parse(end) : null,
+                        sequence));
+        return userRepository.seek(spec, sort, cursor, size).map(UserSummaryDTO::new);
     }
 
     /**
@@ -128,7 +324,34 @@ public class BookController {
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     public Book create(@RequestBody Book book) {
-        return bookRepository.save(book);
+        Book created = bookRepository.save(book);
+        bookQueryCache.invalidate(created);
+        return created;
+    }
+
+    /**
+     * This method imports a catalog of {@link Book} sent as NDJSON, one book per line, reading and storing it in
+     * batches while the body arrives
+     *
+     * @param request: The request with the body to import
+     * @return The {@link ImportReportDTO} with the rows imported, the rejected and the rows per second
+     * @throws IOException: When the body can't be read
+     */
+    @PostMapping(value = "import", consumes = BookBulkImportService.NDJSON)
+    public ImportReportDTO importNdjson(HttpServletRequest request) throws IOException {
+        return bookBulkImportService.importBooks(reader(request), BookBulkImportService.Format.NDJSON);
+    }
+
+    /**
+     * This method imports a catalog of {@link Book} sent as CSV, with a header with the names of the fields
+     *
+     * @param request: The request with the body to import
+     * @return The {@link ImportReportDTO} with the rows imported, the rejected and the rows per second
+     * @throws IOException: When the body can't be read
+     */
+    @PostMapping(value = "import", consumes = BookBulkImportService.CSV)
+    public ImportReportDTO importCsv(HttpServletRequest request) throws IOException {
+        return bookBulkImportService.importBooks(reader(request), BookBulkImportService.Format.CSV);
     }
 
     /**
@@ -146,8 +369,13 @@ public class BookController {
             throw new BookIdMismatchException("Id doesn't match");
         }
 
-        bookRepository.findById(id).orElseThrow(() -> new BookNotFoundException("Book Not found"));
-        return bookRepository.save(book);
+        Book stored = bookRepository.findById(id).orElseThrow(() -> new BookNotFoundException("Book Not found"));
+        // The stored book is merged with the new state on save, so its attributes are taken before
+        Map<String, Object> previous = BookQueryCache.attributes(stored);
+        Book updated = bookRepository.save(book);
+        bookQueryCache.invalidate(previous);
+        bookQueryCache.invalidate(updated);
+        return updated;
     }
 
     /**
@@ -158,8 +386,9 @@ public class BookController {
      */
     @DeleteMapping("{id}")
     public void delete(@PathVariable(name = "id") int id) throws BookNotFoundException {
-        bookRepository.findById(id).orElseThrow(() -> new BookNotFoundException("Book Not found"));
+        Book stored = bookRepository.findById(id).orElseThrow(() -> new BookNotFoundException("Book Not found"));
         bookRepository.deleteById(id);
+        bookQueryCache.invalidate(stored);
     }
 
     /**
@@ -168,18 +397,93 @@ public class BookController {
      * @param publisher: The publisher of Book for filter list
      * @param genre:     The genre of Book for filter list
      * @param year:      The year of Book for filter list
+     * @param total:     EXACT counts the books, NONE returns a slice without total and CACHED reuses a recent count
+     *                   when there are no filters. The EXACT pages are kept in the {@link BookQueryCache}
      * @return List of {@link Book} filtered with the params passed
      */
     @GetMapping("search")
-    public Page<Book> findBooks(
+    public Slice<Book> findBooks(
             @RequestParam(name = "publisher", required = false) String publisher,
             @RequestParam(name = "genre", required = false) String genre,
             @RequestParam(name = "year", required = false) String year,
             @RequestParam(defaultValue = "0") Integer from,
             @RequestParam(defaultValue = "5") Integer size,
-            @RequestParam(defaultValue = "id") String sort
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "EXACT") TotalMode total
     ) {
-        return bookRepository.findAllByPublisherAndGenreAndYear(publisher, genre, year, PageRequest.of(from, size, Sort.by(sort)));
+        PageRequest pageRequest = PageRequest.of(from, size, Sort.by(sort));
+        boolean filtered = Stream.of(publisher, genre, year).anyMatch(Objects::nonNull);
+        if (total == TotalMode.NONE || (total == TotalMode.CACHED && !filtered)) {
+            Slice<Book> slice = bookRepository.findSlice(BookSpecifications.filter(publisher, genre, year), pageRequest);
+            return total == TotalMode.NONE ? slice : countCache.page(slice, BOOKS, bookRepository::count);
+        }
+
+        return bookQueryCache.page(
+                BookQueryCache.filters(null, null, genre, null, null, null, publisher, null, null, year),
+                pageRequest,
+                () -> bookRepository.findAllByPublisherAndGenreAndYear(publisher, genre, year, pageRequest));
+    }
+
+    /**
+     * This method retrieves a page of {@link Book} filtered like {@link #findBooks}, returning only the requested
+     * fields of each book
+     *
+     * @param fields: The fields of the books to return, like id,title
+     * @return The page with the values of the fields of each book
+     * @throws InvalidFieldException: When a field is not an attribute of the book
+     */
+    @GetMapping(value = "search", params = {"fields", "!cursor"})
+    public Slice<Map<String, Object>> findBooksFields(
+            @RequestParam(name = "publisher", required = false) String publisher,
+            @RequestParam(name = "genre", required = false) String genre,
+            @RequestParam(name = "year", required = false) String year,
+            @RequestParam(name = "fields") List<String> fields,
+            @RequestParam(defaultValue = "0") Integer from,
+            @RequestParam(defaultValue = "5") Integer size,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "EXACT") TotalMode total
+    ) throws InvalidFieldException {
+        boolean filtered = Stream.of(publisher, genre, year).anyMatch(Objects::nonNull);
+        return fields(BookSpecifications.filter(publisher, genre, year), filtered, fields, PageRequest.of(from, size, Sort.by(sort)), total);
+    }
+
+    /**
+     * This method retrieves a page of {@link Book} filtered like {@link #findBooks}, paginated by cursor
+     *
+     * @param cursor: The next cursor of the previous page, empty for the first page
+     * @return The {@link CursorPageDTO} with the books and the cursor of the next page
+     * @throws InvalidCursorException: When the cursor is invalid or the sort can't be used with cursors
+     */
+    @GetMapping(value = "search", params = "cursor")
+    public CursorPageDTO<Book> findBooksByCursor(
+            @RequestParam(name = "publisher", required = false) String publisher,
+            @RequestParam(name = "genre", required = false) String genre,
+            @RequestParam(name = "year", required = false) String year,
+            @RequestParam(name = "cursor") String cursor,
+            @RequestParam(defaultValue = "5") Integer size,
+            @RequestParam(defaultValue = "id") String sort
+    ) throws InvalidCursorException {
+        return bookRepository.seek(BookSpecifications.filter(publisher, genre, year), sort, cursor, size);
+    }
+
+    private Slice<Map<String, Object>> fields(Specification<Book> spec, boolean filtered, List<String> fields,
+                                              PageRequest pageRequest, TotalMode total) throws InvalidFieldException {
+        Slice<Map<String, Object>> slice = bookRepository.findFields(spec, fields, pageRequest);
+        if (total == TotalMode.NONE) {
+            return slice;
+        }
+        if (total == TotalMode.CACHED && !filtered) {
+            return countCache.page(slice, BOOKS, bookRepository::count);
+        }
+
+        return PageableExecutionUtils.getPage(slice.getContent(), pageRequest, () -> bookRepository.count(spec));
+    }
+
+    private static Reader reader(HttpServletRequest request) throws IOException {
+        Charset charset = Objects.isNull(request.getCharacterEncoding())
+                ? StandardCharsets.UTF_8
+                : Charset.forName(request.getCharacterEncoding());
+        return new InputStreamReader(request.getInputStream(), charset);
     }
 
 }
@@ -1,14 +1,29 @@
 package com.wolox.training.controller;
 
+import com.wolox.training.dto.CursorPageDTO;
+import com.wolox.training.dto.FavoriteOperationDTO;
+import com.wolox.training.dto.FavoriteResultDTO;
+import com.wolox.training.dto.TotalMode;
 import com.wolox.training.exception.BookAlreadyOwnedException;
 import com.wolox.training.exception.BookNotFoundException;
 import com.wolox.training.exception.ErrorHandler;
+import com.wolox.training.exception.HashingRejectedException;
+import com.wolox.training.exception.InvalidCursorException;
+import com.wolox.training.exception.InvalidFieldException;
+import com.wolox.training.exception.TooManyOperationsException;
 import com.wolox.training.exception.UserIdMismatchException;
 import com.wolox.training.exception.UserNotFoundException;
 import com.wolox.training.models.Book;
 import com.wolox.training.models.User;
 import com.wolox.training.repository.BookRepository;
+import com.wolox.training.repository.BookSpecifications;
 import com.wolox.training.repository.UserRepository;
+import com.wolox.training.repository.UserSpecifications;
+import com.wolox.training.security.CredentialCache;
+import com.wolox.training.security.PasswordHashingService;
+import com.wolox.training.service.AuthService;
+import com.wolox.training.service.CountCache;
+import com.wolox.training.service.FavoriteBookService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -16,13 +31,14 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
@@ -37,6 +53,9 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 
@@ -45,6 +64,9 @@ import java.util.Objects;
 @Api
 public class UserController {
 
+    private static final String USERS = "users";
+    private static final List<String> SUMMARY = Arrays.asList("id", "username", "name", "birthDate");
+
     @Autowired
     private UserRepository userRepository;
 
@@ -52,7 +74,19 @@ public class UserController {
     private BookRepository bookRepository;
 
     @Autowired
-    private PasswordEncoder encoder;
+    private PasswordHashingService passwordHashingService;
+
+    @Autowired
+    private CountCache countCache;
+
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private FavoriteBookService favoriteBookService;
 
     /**
      * This method return a collection of {@link User}
@@ -60,6 +94,7 @@ public class UserController {
      * @param from: Page from retrieves results
      * @param size: Size list of expected result
      * @param sort: Field by sort
+     * @param total: EXACT counts the users, CACHED reuses a recent count and NONE returns a slice without total
      * @return Collection of {@link User}
      */
     @GetMapping
@@ -67,12 +102,94 @@ public class UserController {
     @ApiResponses({
             @ApiResponse(code = 200, message = "Successfully retrieves a users list")
     })
-    public Page<User> getAll(
+    public Slice<User> getAll(
             @RequestParam(name = "from", defaultValue = "0") Integer from,
             @RequestParam(name = "size", defaultValue = "5") Integer size,
-            @RequestParam(name = "sort", defaultValue = "id") String sort
+            @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @RequestParam(name = "total", defaultValue = "EXACT") TotalMode total
     ) {
-        return userRepository.findAll(PageRequest.of(from, size, Sort.by(sort)));
+        PageRequest pageRequest = PageRequest.of(from, size, Sort.by(sort));
+        if (total == TotalMode.EXACT) {
+            return userRepository.findAll(pageRequest);
+        }
+
+        Slice<User> slice = userRepository.findSlice(null, pageRequest);
+        return total == TotalMode.NONE ? slice : countCache.page(slice, USERS, userRepository::count);
+    }
+
+    /**
+     * This method return a collection of {@link User} with only the requested fields of each user, without their books
+     *
+     * @param fields: The fields of the users to return, like id,username
+     * @param total:  EXACT counts the users, CACHED reuses a recent count and NONE returns a slice without total
+     * @return The page with the values of the fields of each user
+     * @throws InvalidFieldException: When a field can't be selected
+     */
+    @GetMapping(params = {"fields", "!cursor"})
+    @ApiOperation(value = "Return the selected fields of all users", responseContainer = "List")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "Successfully retrieves the fields of the users"),
+            @ApiResponse(code = 400, message = "A field can't be selected", response = ErrorHandler.Response.class)
+    })
+    public Slice<Map<String, Object>> getAllFields(
+            @RequestParam(name = "fields") List<String> fields,
+            @RequestParam(name = "from", defaultValue = "0") Integer from,
+            @RequestParam(name = "size", defaultValue = "5") Integer size,
+            @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @RequestParam(name = "total", defaultValue = "EXACT") TotalMode total
+    ) throws InvalidFieldException {
+        PageRequest pageRequest = PageRequest.of(from, size, Sort.by(sort));
+        Slice<Map<String, Object>> slice = userRepository.findFields(null, fields, pageRequest);
+        if (total == TotalMode.NONE) {
+            return slice;
+        }
+
+        return total == TotalMode.CACHED
+                ? countCache.page(slice, USERS, userRepository::count)
+                : PageableExecutionUtils.getPage(slice.getContent(), pageRequest, userRepository::count);
+    }
+
+    /**
+     * This method return a collection of {@link User} without their favorite books, which aren't loaded at all
+     *
+     * @param total: EXACT counts the users, CACHED reuses a recent count and NONE returns a slice without total
+     * @return The page with the id, username, name and birth date of each user
+     */
+    @GetMapping(params = {"books=false", "!fields", "!cursor"})
+    @ApiOperation(value = "Return all users without their books", responseContainer = "List")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "Successfully retrieves a users list")
+    })
+    public Slice<Map<String, Object>> getAllWithoutBooks(
+            @RequestParam(name = "from", defaultValue = "0") Integer from,
+            @RequestParam(name = "size", defaultValue = "5") Integer size,
+            @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @RequestParam(name = "total", defaultValue = "EXACT") TotalMode total
+    ) throws InvalidFieldException {
+        return getAllFields(SUMMARY, from, size, sort, total);
+    }
+
+    /**
+     * This method return a page of {@link User} paginated by cursor, seeking from the last user of the previous page
+     *
+     * @param cursor: The next cursor of the previous page, empty for the first page
+     * @param size:   Size list of expected result
+     * @param sort:   Field by sort, the cursor only works with the sort it was created
+     * @return The {@link CursorPageDTO} with the users and the cursor of the next page
+     * @throws InvalidCursorException: When the cursor is invalid or the sort can't be used with cursors
+     */
+    @GetMapping(params = "cursor")
+    @ApiOperation(value = "Return users paginated by cursor", response = User.class, responseContainer = "List")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "Successfully retrieves a users page"),
+            @ApiResponse(code = 400, message = "The cursor is not valid", response = ErrorHandler.Response.class)
+    })
+    public CursorPageDTO<User> getAllByCursor(
+            @RequestParam(name = "cursor") String cursor,
+            @RequestParam(name = "size", defaultValue = "5") Integer size,
+            @RequestParam(name = "sort", defaultValue = "id") String sort
+    ) throws InvalidCursorException {
+        return userRepository.seek(null, sort, cursor, size);
     }
 
     /**
@@ -93,21 +210,25 @@ public class UserController {
      *
      * @param user: Data with structure like a User to create
      * @return Created {@link User} with attributes passed in the param
+     * @throws HashingRejectedException: When there are too many password hashes in progress
      */
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     @ApiOperation(value = "Create a User", response = User.class)
     @ApiResponses({
             @ApiResponse(code = 201, message = "Successfully retrieves then recently created user"),
-            @ApiResponse(code = 400, message = "The Body received not has all required values", response = ErrorHandler.Response.class)
+            @ApiResponse(code = 400, message = "The Body received not has all required values", response = ErrorHandler.Response.class),
+            @ApiResponse(code = 503, message = "Too many password hashes in progress", response = ErrorHandler.Response.class)
     })
-    public User create(@ApiParam(value = "User to create", required = true) @RequestBody User user) {
+    public User create(@ApiParam(value = "User to create", required = true) @RequestBody User user) throws HashingRejectedException {
         if (Objects.isNull(user.getPassword())) {
             throw new DataIntegrityViolationException("Password must be not null");
         }
 
-        user.setPassword(encoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        user.setPassword(passwordHashingService.encode(user.getPassword()));
+        User created = userRepository.save(user);
+        authService.evict(user.getUsername());
+        return created;
     }
 
     /**
@@ -136,7 +257,10 @@ public class UserController {
 
         User u = userRepository.findById(id).orElseThrow(() -> new UserNotFoundException("User not found"));
         user.setPassword(u.getPassword());
-        return userRepository.save(user);
+        User updated = userRepository.save(user);
+        evict(u.getUsername());
+        evict(user.getUsername());
+        return updated;
     }
 
     /**
@@ -153,8 +277,9 @@ public class UserController {
     })
     public void delete(@ApiParam(value = "Id of the user", required = true) @PathVariable(name = "id") Integer id) throws UserNotFoundException {
 
-        userRepository.findById(id).orElseThrow(() -> new UserNotFoundException("User not found"));
+        User u = userRepository.findById(id).orElseThrow(() -> new UserNotFoundException("User not found"));
         userRepository.deleteById(id);
+        evict(u.getUsername());
     }
 
     /**
@@ -209,6 +334,120 @@ public class UserController {
         return userRepository.save(user);
     }
 
+    /**
+     * This method retrieves a page of the favorite {@link Book} of the {@link User}, paginated by cursor and
+     * filtered with the optional params, reading only the rows of the page instead of the whole collection
+     *
+     * @param userId: Id of the user
+     * @param cursor: The next cursor of the previous page, empty or absent for the first page
+     * @param size:   Size list of expected result
+     * @param sort:   Field by sort, the cursor only works with the sort it was created
+     * @return The {@link CursorPageDTO} with the books and the cursor of the next page
+     * @throws UserNotFoundException:  When the user not found with id param passed
+     * @throws InvalidCursorException: When the cursor is invalid or the sort can't be used with cursors
+     */
+    @GetMapping("{user_id}/books")
+    @ApiOperation(value = "Giving an Id of user, return its books paginated by cursor", response = Book.class, responseContainer = "List")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "Successfully retrieves a page of the books of the user"),
+            @ApiResponse(code = 400, message = "The cursor is not valid", response = ErrorHandler.Response.class),
+            @ApiResponse(code = 404, message = "User Not found by id passed", response = ErrorHandler.Response.class)
+    })
+    public CursorPageDTO<Book> getBooks(
+            @ApiParam(value = "Id of the user", required = true) @PathVariable(name = "user_id") Integer userId,
+            @RequestParam(name = "author", required = false) String author,
+            @RequestParam(name = "genre", required = false) String genre,
+            @RequestParam(name = "isbn", required = false) String isbn,
+            @RequestParam(name = "publisher", required = false) String publisher,
+            @RequestParam(name = "title", required = false) String title,
+            @RequestParam(name = "year", required = false) String year,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", defaultValue = "5") Integer size,
+            @RequestParam(name = "sort", defaultValue = "id") String sort
+    ) throws UserNotFoundException, InvalidCursorException {
+        if (!userRepository.existsById(userId)) {
+            throw new UserNotFoundException("User Not found");
+        }
+
+        return bookRepository.seek(
+                Specification.where(BookSpecifications.favoriteOf(userId))
+                        .and(BookSpecifications.filter(null, author, genre, null, isbn, null, publisher, null, title, year)),
+                sort, cursor, size);
+    }
+
+    /**
+     * This method adds a {@link Book} to the favorites of the {@link User} inserting only its row, without loading
+     * the collection of books of the user
+     *
+     * @param userId: Id of the user to add the book
+     * @param bookId: Id of book to add of the user
+     * @throws UserNotFoundException:     When the user not found with id param passed
+     * @throws BookNotFoundException:     When the book not found with id param passed
+     * @throws BookAlreadyOwnedException: When the book to be added already exists in the user's book list
+     */
+    @PostMapping("{user_id}/books/{book_id}")
+    @ResponseStatus(HttpStatus.CREATED)
+    @ApiOperation(value = "Giving an Id of user and Id of book, add a book to user without returning the user")
+    @ApiResponses({
+            @ApiResponse(code = 201, message = "Successfully add book to user"),
+            @ApiResponse(code = 400, message = "The book is already assigned to the user", response = ErrorHandler.Response.class),
+            @ApiResponse(code = 404, message = "User or Book Not found by id passed", response = ErrorHandler.Response.class)
+    })
+    public void addFavorite(@ApiParam(value = "Id of the user", required = true) @PathVariable(name = "user_id") Integer userId,
+                            @ApiParam(value = "Id of the book", required = true) @PathVariable(name = "book_id") Integer bookId) throws UserNotFoundException, BookNotFoundException, BookAlreadyOwnedException {
+        if (!userRepository.existsById(userId)) {
+            throw new UserNotFoundException("User Not found");
+        }
+        if (!bookRepository.existsById(bookId)) {
+            throw new BookNotFoundException("Book Not Found");
+        }
+
+        try {
+            userRepository.addFavorite(userId, bookId);
+        } catch (DataIntegrityViolationException e) {
+            throw new BookAlreadyOwnedException("The book " + bookId + " is already assigned to user " + userId);
+        }
+    }
+
+    /**
+     * This method removes a {@link Book} of the favorites of the {@link User} deleting only its row
+     *
+     * @param userId: Id of the user to remove the book
+     * @param bookId: Id of book to remove of the user
+     * @throws BookNotFoundException: When the book is not a favorite of the user
+     */
+    @DeleteMapping("{user_id}/books/{book_id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @ApiOperation(value = "Giving an Id of user and Id of book, remove a book to user without returning the user")
+    @ApiResponses({
+            @ApiResponse(code = 204, message = "Successfully remove book to user"),
+            @ApiResponse(code = 404, message = "The book is not assigned to the user", response = ErrorHandler.Response.class)
+    })
+    public void removeFavorite(@ApiParam(value = "Id of the user", required = true) @PathVariable(name = "user_id") Integer userId,
+                               @ApiParam(value = "Id of the book", required = true) @PathVariable(name = "book_id") Integer bookId) throws BookNotFoundException {
+        if (userRepository.removeFavorite(userId, bookId) == 0) {
+            throw new BookNotFoundException("The book " + bookId + " is not assigned to user " + userId);
+        }
+    }
+
+    /**
+     * This method applies a list of add and remove operations on the favorite books of one or many users in a single
+     * transaction, so a client can sync its changes in one request
+     *
+     * @param operations: The operations to apply in order
+     * @return The result of each operation, in the same order
+     * @throws TooManyOperationsException: When the list exceeds the max number of operations
+     */
+    @PostMapping("favorites")
+    @ApiOperation(value = "Add and remove books of the favorites of the users", response = FavoriteResultDTO.class, responseContainer = "List")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "Successfully apply the operations, see the status of each one"),
+            @ApiResponse(code = 400, message = "Too many operations", response = ErrorHandler.Response.class)
+    })
+    public List<FavoriteResultDTO> applyFavorites(@ApiParam(value = "Operations to apply", required = true) @RequestBody List<FavoriteOperationDTO> operations) throws TooManyOperationsException {
+        return favoriteBookService.apply(operations);
+    }
+
     /**
      * This method retrieves a List of {@link User} following the next params
      *
@@ -218,21 +457,110 @@ public class UserController {
      * @param from:     Page from retrieves results
      * @param size:     Size list of expected result
      * @param sort:     Field by sort
+     * @param total:    EXACT counts the users and NONE returns a slice without total, the filtered search has no
+     *                  cached total so CACHED counts like EXACT
      * @return List of {@link User} filtered with params passed
      */
     @GetMapping("search")
-    public Page<User> findUsers(
+    public Slice<User> findUsers(
             @RequestParam(name = "begin", required = false) String begin,
             @RequestParam(name = "end", required = false) String end,
             @RequestParam(name = "sequence", required = false, defaultValue = "") String sequence,
             @RequestParam(name = "from", defaultValue = "0") Integer from,
             @RequestParam(name = "size", defaultValue = "5") Integer size,
-            @RequestParam(name = "sort", defaultValue = "id") String sort
+            @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @RequestParam(name = "total", defaultValue = "EXACT") TotalMode total
     ) {
+        if (total == TotalMode.NONE) {
+            return userRepository.findSlice(
+                    UserSpecifications.search(
+                            Objects.nonNull(begin) ? LocalDate.parse(begin) : null,
+                            Objects.nonNull(end) ? LocalDate.parse(end) : null,
+                            sequence),
+                    PageRequest.of(from, size, Sort.by(sort)));
+        }
+
         return userRepository.findAllByBirthDateBetweenAndNameIsContainingIgnoreCase(
                 Objects.nonNull(begin) ? LocalDate.parse(begin) : null,
                 Objects.nonNull(end) ? LocalDate.parse(end) : null,
                 sequence, PageRequest.of(from, size, Sort.by(sort)));
     }
 
+    /**
+     * This method retrieves a page of {@link User} filtered like {@link #findUsers}, returning only the requested
+     * fields of each user
+     *
+     * @param fields: The fields of the users to return, like id,username
+     * @return The page with the values of the fields of each user
+     * @throws InvalidFieldException: When a field can't be selected
+     */
+    @GetMapping(value = "search", params = {"fields", "!cursor"})
+    public Slice<Map<String, Object>> findUsersFields(
+            @RequestParam(name = "begin", required = false) String begin,
+            @RequestParam(name = "end", required = false) String end,
+            @RequestParam(name = "sequence", required = false, defaultValue = "") String sequence,
+            @RequestParam(name = "fields") List<String> fields,
+            @RequestParam(name = "from", defaultValue = "0") Integer from,
+            @RequestParam(name = "size", defaultValue = "5") Integer size,
+            @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @RequestParam(name = "total", defaultValue = "EXACT") TotalMode total
+    ) throws InvalidFieldException {
+        Specification<User> spec = UserSpecifications.search(
+                Objects.nonNull(begin) ? LocalDate.parse(begin) : null,
+                Objects.nonNull(end) ? LocalDate.parse(end) : null,
+                sequence);
+        PageRequest pageRequest = PageRequest.of(from, size, Sort.by(sort));
+        Slice<Map<String, Object>> slice = userRepository.findFields(spec, fields, pageRequest);
+        return total == TotalMode.NONE
+                ? slice
+                : PageableExecutionUtils.getPage(slice.getContent(), pageRequest, () -> userRepository.count(spec));
+    }
+
+    /**
+     * This method retrieves a page of {@link User} filtered like {@link #findUsers}, without their favorite books
+     *
+     * @return The page with the id, username, name and birth date of each user
+     */
+    @GetMapping(value = "search", params = {"books=false", "!fields", "!cursor"})
+    public Slice<Map<String, Object>> findUsersWithoutBooks(
+            @RequestParam(name = "begin", required = false) String begin,
+            @RequestParam(name = "end", required = false) String end,
+            @RequestParam(name = "sequence", required = false, defaultValue = "") String sequence,
+            @RequestParam(name = "from", defaultValue = "0") Integer from,
+            @RequestParam(name = "size", defaultValue = "5") Integer size,
+            @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @RequestParam(name = "total", defaultValue = "EXACT") TotalMode total
+    ) throws InvalidFieldException {
+        return findUsersFields(begin, end, sequence, SUMMARY, from, size, sort, total);
+    }
+
+    /**
+     * This method retrieves a page of {@link User} filtered like {@link #findUsers}, paginated by cursor
+     *
+     * @param cursor: The next cursor of the previous page, empty for the first page
+     * @return The {@link CursorPageDTO} with the users and the cursor of the next page
+     * @throws InvalidCursorException: When the cursor is invalid or the sort can't be used with cursors
+     */
+    @GetMapping(value = "search", params = "cursor")
+    public CursorPageDTO<User> findUsersByCursor(
+            @RequestParam(name = "begin", required = false) String begin,
+            @RequestParam(name = "end", required = false) String end,
+            @RequestParam(name = "sequence", required = false, defaultValue = "") String sequence,
+            @RequestParam(name = "cursor") String cursor,
+            @RequestParam(name = "size", defaultValue = "5") Integer size,
+            @RequestParam(name = "sort", defaultValue = "id") String sort
+    ) throws InvalidCursorException {
+        return userRepository.seek(
+                UserSpecifications.search(
+                        Objects.nonNull(begin) ? LocalDate.parse(begin) : null,
+                        Objects.nonNull(end) ? LocalDate.parse(end) : null,
+                        sequence),
+                sort, cursor, size);
+    }
+
+    private void evict(String username) {
+        authService.evict(username);
+        credentialCache.invalidate(username);
+    }
+
 }
@@ -34,6 +34,18 @@ public class BookDTO {
         this.imageUrl = json.getString("url");
     }
 
+    public BookDTO(String isbn, String title, String subtitle, List<String> publishers, String publishDate,
+                   int numberOfPages, List<String> authors, String imageUrl) {
+        this.isbn = isbn;
+        this.title = title;
+        this.subtitle = subtitle;
+        this.publishers = publishers;
+        this.publishDate = publishDate;
+        this.numberOfPages = numberOfPages;
+        this.authors = authors;
+        this.imageUrl = imageUrl;
+    }
+
     public BookDTO(Book book) {
         this.isbn = book.getIsbn();
         this.title = book.getTitle();
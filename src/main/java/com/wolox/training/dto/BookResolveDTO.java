@@ -0,0 +1,36 @@
+package com.wolox.training.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BookResolveDTO {
+
+    private final List<BookDTO> books = new ArrayList<>();
+    private final List<String> created = new ArrayList<>();
+    private final List<String> notFound = new ArrayList<>();
+
+    public void addBook(BookDTO book) {
+        this.books.add(book);
+    }
+
+    public void addCreated(BookDTO book) {
+        this.books.add(book);
+        this.created.add(book.getIsbn());
+    }
+
+    public void addNotFound(String isbn) {
+        this.notFound.add(isbn);
+    }
+
+    public List<BookDTO> getBooks() {
+        return books;
+    }
+
+    public List<String> getCreated() {
+        return created;
+    }
+
+    public List<String> getNotFound() {
+        return notFound;
+    }
+}
@@ -0,0 +1,42 @@
+package com.wolox.training.dto;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A page of a listing paginated by cursor, the next cursor is null when there are no more elements
+ */
+public class CursorPageDTO<T> {
+
+    private final List<T> content;
+    private final String next;
+
+    public CursorPageDTO(List<T> content, String next) {
+        this.content = content;
+        this.next = next;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public boolean isLast() {
+        return Objects.isNull(next);
+    }
+
+    /**
+     * This method converts the elements of the page, keeping the cursor of the next page
+     *
+     * @param converter: Converts each element
+     * @return The {@link CursorPageDTO} with the converted elements
+     */
+    public <R> CursorPageDTO<R> map(Function<? super T, ? extends R> converter) {
+        return new CursorPageDTO<>(content.stream().map(converter).collect(Collectors.toList()), next);
+    }
+}
@@ -0,0 +1,46 @@
+package com.wolox.training.dto;
+
+public class FavoriteOperationDTO {
+
+    public enum Action {
+        ADD,
+        REMOVE
+    }
+
+    private int userId;
+    private int bookId;
+    private Action action;
+
+    public FavoriteOperationDTO() {
+    }
+
+    public FavoriteOperationDTO(int userId, int bookId, Action action) {
+        this.userId = userId;
+        this.bookId = bookId;
+        this.action = action;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(int bookId) {
+        this.bookId = bookId;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public void setAction(Action action) {
+        this.action = action;
+    }
+}
@@ -0,0 +1,42 @@
+package com.wolox.training.dto;
+
+public class FavoriteResultDTO {
+
+    public enum Status {
+        ADDED,
+        REMOVED,
+        ALREADY_OWNED,
+        NOT_OWNED,
+        USER_NOT_FOUND,
+        BOOK_NOT_FOUND,
+        INVALID_ACTION
+    }
+
+    private final int userId;
+    private final int bookId;
+    private final FavoriteOperationDTO.Action action;
+    private final Status status;
+
+    public FavoriteResultDTO(FavoriteOperationDTO operation, Status status) {
+        this.userId = operation.getUserId();
+        this.bookId = operation.getBookId();
+        this.action = operation.getAction();
+        this.status = status;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public FavoriteOperationDTO.Action getAction() {
+        return action;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,89 @@
+package com.wolox.training.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImportReportDTO {
+
+    private final List<RowError> errors = new ArrayList<>();
+    private long rows;
+    private long imported;
+    private long rejected;
+    private boolean errorsTruncated;
+    private long elapsedMillis;
+
+    public void addRows(long rows) {
+        this.rows += rows;
+    }
+
+    public void addImported(long imported) {
+        this.imported += imported;
+    }
+
+    /**
+     * This method records a rejected row, keeping the detail only of the first rejected rows
+     *
+     * @param line: The line of the row in the body, starting at 1
+     * @param message: The reason of the rejection
+     * @param maxErrors: The max number of errors detailed in the report
+     */
+    public void addError(long line, String message, int maxErrors) {
+        this.rejected++;
+        if (errors.size() < maxErrors) {
+            errors.add(new RowError(line, message));
+        } else {
+            errorsTruncated = true;
+        }
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? rows : rows * 1000.0 / elapsedMillis;
+    }
+
+    public static class RowError {
+
+        private final long line;
+        private final String message;
+
+        private RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
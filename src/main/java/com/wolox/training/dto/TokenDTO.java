@@ -0,0 +1,26 @@
+package com.wolox.training.dto;
+
+public class TokenDTO {
+
+    private static final String BEARER = "Bearer";
+
+    private final String accessToken;
+    private final long expiresIn;
+
+    public TokenDTO(String accessToken, long expiresIn) {
+        this.accessToken = accessToken;
+        this.expiresIn = expiresIn;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public String getTokenType() {
+        return BEARER;
+    }
+
+    public long getExpiresIn() {
+        return expiresIn;
+    }
+}
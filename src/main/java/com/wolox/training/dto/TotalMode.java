@@ -0,0 +1,11 @@
+package com.wolox.training.dto;
+
+/**
+ * How a listing computes its total of elements: EXACT counts on every request, CACHED reuses a recent count of the
+ * unfiltered listing and NONE returns a slice that only knows if there is a next page
+ */
+public enum TotalMode {
+    EXACT,
+    CACHED,
+    NONE
+}
@@ -0,0 +1,39 @@
+package com.wolox.training.dto;
+
+import com.wolox.training.models.User;
+
+import java.time.LocalDate;
+
+/**
+ * The data of a {@link User} without its favorite books, so listing users doesn't load their collections
+ */
+public class UserSummaryDTO {
+
+    private final int id;
+    private final String username;
+    private final String name;
+    private final LocalDate birthDate;
+
+    public UserSummaryDTO(User user) {
+        this.id = user.getId();
+        this.username = user.getUsername();
+        this.name = user.getName();
+        this.birthDate = user.getBirthDate();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LocalDate getBirthDate() {
+        return birthDate;
+    }
+}
@@ -34,6 +34,9 @@ public class ErrorHandler {
             ConstraintViolationException.class,
             DataIntegrityViolationException.class,
             BookAlreadyOwnedException.class,
+            InvalidCursorException.class,
+            InvalidFieldException.class,
+            TooManyOperationsException.class,
             MissingServletRequestParameterException.class,
             QueryException.class
     })
@@ -48,6 +51,11 @@ public class ErrorHandler {
         return ResponseEntity.badRequest().body(response);
     }
 
+    @ExceptionHandler(HashingRejectedException.class)
+    public ResponseEntity<Response> handleUnavailable(Exception ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new Response(ex.getMessage()));
+    }
+
     @ExceptionHandler({
             IOException.class,
             ExternalApiException.class
@@ -0,0 +1,8 @@
+package com.wolox.training.exception;
+
+public class HashingRejectedException extends Exception {
+
+    public HashingRejectedException(String message) {
+        super(message);
+    }
+}
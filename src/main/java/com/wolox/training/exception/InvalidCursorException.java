@@ -0,0 +1,8 @@
+package com.wolox.training.exception;
+
+public class InvalidCursorException extends Exception {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.wolox.training.exception;
+
+public class InvalidFieldException extends Exception {
+
+    public InvalidFieldException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.wolox.training.exception;
+
+public class TooManyOperationsException extends Exception {
+
+    public TooManyOperationsException(String message) {
+        super(message);
+    }
+}
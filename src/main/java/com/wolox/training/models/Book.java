@@ -7,20 +7,32 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToMany;
+import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 import java.util.List;
 
 /**
- * This class represent the Book Entity
+ * This class represent the Book Entity, kept in the second level cache because the books change rarely
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(indexes = {
+        @Index(name = "ux_book_isbn", columnList = "isbn", unique = true),
+        @Index(name = "ix_book_author", columnList = "author"),
+        @Index(name = "ix_book_publisher_genre_year", columnList = "publisher, genre, year")
+})
 @NoArgsConstructor
 public class Book {
 
@@ -127,4 +139,24 @@ public class Book {
                 "\"isbn\":\"" + isbn + "\"" +
                 "}";
     }
+
+    /**
+     * The stored books are equal by id and the ones not stored yet only to themselves, the isbn can be updated. The
+     * hash code is the id, so only books read from the database are added to the sets of favorites
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Book)) {
+            return false;
+        }
+        return id != 0 && id == ((Book) o).getId();
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
 }
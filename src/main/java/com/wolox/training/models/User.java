@@ -7,7 +7,11 @@ import io.swagger.annotations.ApiModelProperty;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -15,21 +19,25 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
+import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 import javax.validation.constraints.NotNull;
 import java.time.LocalDate;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * This class represent the User entity
  */
 @Entity(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "users", indexes = @Index(name = "ux_users_username", columnList = "username", unique = true))
 @ApiModel(description = "Users of application")
 public class User {
 
@@ -69,17 +77,26 @@ public class User {
     @ApiModelProperty(notes = "Password: Is the password for authenticate user")
     private String password;
 
+    /**
+     * The column "book_id" of the join table references the user and "user_id" references the book. The unique
+     * constraint serves the lookups by book, the index the lookups of the books of a user.
+     * The listings initialize the books of all the users of the page with one query instead of one per user.
+     * The writes to user_book that bypass Hibernate must evict the cached collection of the user
+     */
     @ManyToMany(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
     @JoinTable(
             name = "user_book",
             joinColumns = @JoinColumn(name = "book_id", referencedColumnName = "id"),
             inverseJoinColumns = @JoinColumn(name = "user_id", referencedColumnName = "id"),
-            uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "book_id"}))
+            uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "book_id"}),
+            indexes = @Index(name = "ix_user_book_book_user", columnList = "book_id, user_id"))
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @ApiModelProperty(notes = "Books: Is the collection of favorite books of the user")
-    private List<Book> books;
+    private Set<Book> books;
 
     public User() {
-        this.books = new ArrayList<>();
+        this.books = new LinkedHashSet<>();
     }
 
     @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
@@ -87,8 +104,8 @@ public class User {
         return password;
     }
 
-    public List<Book> getBooks() {
-        return Collections.unmodifiableList(books);
+    public Set<Book> getBooks() {
+        return Collections.unmodifiableSet(books);
     }
 
     /**
@@ -98,24 +115,12 @@ public class User {
      * @throws BookAlreadyOwnedException: When attempt add a book witch is already assigned to user
      */
     public void addBook(@NotNull Book book) throws BookAlreadyOwnedException {
-        if (this.books.contains(book)) {
+        if (!this.books.add(book)) {
             throw new BookAlreadyOwnedException("The book " + book.getTitle() + " is already assigned to user " + this.id);
         }
-        this.books.add(book);
     }
 
 
-    /**
-     * This method remove The {@link Book} allocated in the position received in the index param
-     *
-     * @param index: Index or position to remove book in the list
-     */
-    public void removeBook(@NotNull int index) {
-        if (Objects.nonNull(this.books) && this.books.size() > index) {
-            this.books.remove(index);
-        }
-    }
-
     /**
      * This method remove The {@link Book} equals to received from param
      *
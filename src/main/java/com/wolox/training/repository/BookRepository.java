@@ -3,54 +3,32 @@ package com.wolox.training.repository;
 import com.wolox.training.models.Book;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Integer> {
-
-    @Query("select b from Book b " +
-            "where (:id is null or b.id = :id) " +
-            "and (:author is null or b.author = :author) " +
-            "and (:genre is null or b.genre = :genre) " +
-            "and (:image is null or b.image = :image) " +
-            "and (:isbn is null or b.isbn = :isbn) " +
-            "and (:pages <= 0 or b.pages = :pages) " +
-            "and (:publisher is null or b.publisher = :publisher) " +
-            "and (:subtitle is null or b.subTitle = :subtitle) " +
-            "and (:title is null or b.title = :title) " +
-            "and (:year is null or b.year = :year)")
-    Page<Book> findAll(
-            @Param("id") Integer id,
-            @Param("author") String author,
-            @Param("genre") String genre,
-            @Param("image") String image,
-            @Param("isbn") String isbn,
-            @Param("pages") Integer pages,
-            @Param("publisher") String publisher,
-            @Param("subtitle") String subtitle,
-            @Param("title") String title,
-            @Param("year") String year,
-            Pageable page
-            );
+public interface BookRepository extends JpaRepository<Book, Integer>, JpaSpecificationExecutor<Book>, BookRepositoryCustom {
+
+    /**
+     * This method filters the books only by the params with value, see {@link BookSpecifications}
+     */
+    default Page<Book> findAll(Integer id, String author, String genre, String image, String isbn, Integer pages,
+                               String publisher, String subtitle, String title, String year, Pageable page) {
+        return findAll(BookSpecifications.filter(id, author, genre, image, isbn, pages, publisher, subtitle, title, year), page);
+    }
 
     Optional<Book> findTopByAuthor(String author);
 
     Optional<Book> findByIsbn(String isbn);
 
-    @Query("select b from Book b where (:publisher is null or b.publisher = :publisher) " +
-            "and (:year is null or b.year = :year ) " +
-            "and (:genre is null or b.genre = :genre)")
-    Page<Book> findAllByPublisherAndGenreAndYear(
-            @Param("publisher") String publisher,
-            @Param("genre" ) String genre,
-            @Param("year" ) String year,
-            Pageable page
-    );
+    List<Book> findAllByIsbnIn(Collection<String> isbns);
+
+    default Page<Book> findAllByPublisherAndGenreAndYear(String publisher, String genre, String year, Pageable page) {
+        return findAll(BookSpecifications.filter(publisher, genre, year), page);
+    }
 }
@@ -0,0 +1,21 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.dto.CursorPageDTO;
+import com.wolox.training.exception.InvalidCursorException;
+import com.wolox.training.exception.InvalidFieldException;
+import com.wolox.training.models.Book;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface BookRepositoryCustom {
+
+    Slice<Book> findSlice(Specification<Book> spec, Pageable pageable);
+
+    Slice<Map<String, Object>> findFields(Specification<Book> spec, Collection<String> fields, Pageable pageable) throws InvalidFieldException;
+
+    CursorPageDTO<Book> seek(Specification<Book> spec, String sort, String cursor, int size) throws InvalidCursorException;
+}
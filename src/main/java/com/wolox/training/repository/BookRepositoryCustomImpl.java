@@ -0,0 +1,17 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.models.Book;
+
+import java.util.Arrays;
+
+/**
+ * The genre is nullable, so it can't be used to paginate by cursor
+ */
+public class BookRepositoryCustomImpl extends KeysetSupport<Book> implements BookRepositoryCustom {
+
+    public BookRepositoryCustomImpl() {
+        super(Book.class,
+                Arrays.asList("id", "genre", "author", "image", "title", "subTitle", "publisher", "year", "pages", "isbn"),
+                "author", "image", "title", "subTitle", "publisher", "year", "pages", "isbn");
+    }
+}
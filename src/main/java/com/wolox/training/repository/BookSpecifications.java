@@ -0,0 +1,70 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class builds the {@link Specification} used to filter {@link Book}. Only the filters with value are added to
+ * the query, so the database can plan each combination of filters with the index of its columns
+ */
+public final class BookSpecifications {
+
+    private BookSpecifications() {
+    }
+
+    public static Specification<Book> filter(Integer id, String author, String genre, String image, String isbn,
+                                             Integer pages, String publisher, String subtitle, String title, String year) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            equal(predicates, root, cb, "id", id);
+            equal(predicates, root, cb, "author", author);
+            equal(predicates, root, cb, "genre", genre);
+            equal(predicates, root, cb, "image", image);
+            equal(predicates, root, cb, "isbn", isbn);
+            equal(predicates, root, cb, "pages", Objects.nonNull(pages) && pages > 0 ? pages : null);
+            equal(predicates, root, cb, "publisher", publisher);
+            equal(predicates, root, cb, "subTitle", subtitle);
+            equal(predicates, root, cb, "title", title);
+            equal(predicates, root, cb, "year", year);
+            return and(cb, predicates);
+        };
+    }
+
+    public static Specification<Book> filter(String publisher, String genre, String year) {
+        return filter(null, null, genre, null, null, null, publisher, null, null, year);
+    }
+
+    /**
+     * This method filters the favorite books of a user, joining the books only with the rows of the user in user_book
+     *
+     * @param userId: The id of the user
+     */
+    public static Specification<Book> favoriteOf(int userId) {
+        return (root, query, cb) -> {
+            Join<Book, User> users = root.join("users");
+            return cb.equal(users.get("id"), userId);
+        };
+    }
+
+    private static void equal(List<Predicate> predicates, Root<Book> root, CriteriaBuilder cb, String attribute, Object value) {
+        if (Objects.nonNull(value)) {
+            predicates.add(cb.equal(root.get(attribute), value));
+        }
+    }
+
+    /**
+     * Without filters there is no predicate at all, so the query has no where clause
+     */
+    private static Predicate and(CriteriaBuilder cb, List<Predicate> predicates) {
+        return predicates.isEmpty() ? null : cb.and(predicates.toArray(new Predicate[0]));
+    }
+}
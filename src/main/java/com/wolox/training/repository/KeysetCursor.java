@@ -0,0 +1,55 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * This class represents the position of the last element of a page, the sort attribute, its value and the id of the
+ * element, encoded in an opaque token the client sends back to fetch the next page
+ */
+public final class KeysetCursor {
+
+    private static final String SEPARATOR = "\n";
+
+    private final String sort;
+    private final String value;
+    private final int id;
+
+    public KeysetCursor(String sort, String value, int id) {
+        this.sort = sort;
+        this.value = value;
+        this.id = id;
+    }
+
+    public static KeysetCursor decode(String token) throws InvalidCursorException {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(SEPARATOR, 3);
+            if (parts.length != 3) {
+                throw new InvalidCursorException("Invalid cursor");
+            }
+            return new KeysetCursor(parts[0], parts[2], Integer.parseInt(parts[1]));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        String raw = sort + SEPARATOR + id + SEPARATOR + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
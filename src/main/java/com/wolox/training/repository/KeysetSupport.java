@@ -0,0 +1,236 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.dto.CursorPageDTO;
+import com.wolox.training.exception.InvalidCursorException;
+import com.wolox.training.exception.InvalidFieldException;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * This class paginates an entity without counting its rows. By cursor, instead of skipping the rows of the previous
+ * pages with an offset, each page seeks the rows after the sort value and id of the last element of the previous page,
+ * so the cost of a page doesn't depend on its depth. Only not null attributes can be used to sort by cursor.
+ * The listings can also select only some of the attributes, reading just their columns instead of whole entities
+ */
+public abstract class KeysetSupport<T> {
+
+    private static final String ID = "id";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final Class<T> domainClass;
+    private final Set<String> selectable;
+    private final Set<String> sortable;
+
+    protected KeysetSupport(Class<T> domainClass, Collection<String> selectable, String... sortable) {
+        this.domainClass = domainClass;
+        this.selectable = new HashSet<>(selectable);
+        this.sortable = new HashSet<>(Arrays.asList(sortable));
+        this.sortable.add(ID);
+    }
+
+    /**
+     * This method retrieves the page of elements after the cursor
+     *
+     * @param spec:   The filters of the listing, can be null
+     * @param sort:   The attribute to sort ascending, the id breaks the ties
+     * @param cursor: The cursor of the previous page, null or empty for the first page
+     * @param size:   The max number of elements of the page
+     * @return The {@link CursorPageDTO} with the elements and the cursor of the next page
+     * @throws InvalidCursorException: When the cursor is malformed, belongs to another sort or the sort is not allowed
+     */
+    public CursorPageDTO<T> seek(Specification<T> spec, String sort, String cursor, int size) throws InvalidCursorException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must not be less than one!");
+        }
+        if (!sortable.contains(sort)) {
+            throw new InvalidCursorException("Can't paginate by cursor sorting by " + sort);
+        }
+
+        KeysetCursor after = Objects.isNull(cursor) || cursor.isEmpty() ? null : KeysetCursor.decode(cursor);
+        if (Objects.nonNull(after) && !after.getSort().equals(sort)) {
+            throw new InvalidCursorException("The cursor doesn't belong to a listing sorted by " + sort);
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(domainClass);
+        Root<T> root = query.from(domainClass);
+
+        List<Predicate> predicates = new ArrayList<>();
+        Predicate filter = Objects.isNull(spec) ? null : spec.toPredicate(root, query, cb);
+        if (Objects.nonNull(filter)) {
+            predicates.add(filter);
+        }
+        if (Objects.nonNull(after)) {
+            predicates.add(after(cb, root, after));
+        }
+
+        query.select(root).where(predicates.toArray(new Predicate[0]));
+        if (ID.equals(sort)) {
+            query.orderBy(cb.asc(root.get(ID)));
+        } else {
+            query.orderBy(cb.asc(root.get(sort)), cb.asc(root.get(ID)));
+        }
+
+        // One more row tells whether there is a next page without counting
+        List<T> rows = entityManager.createQuery(query).setMaxResults(size + 1).getResultList();
+        if (rows.size() <= size) {
+            return new CursorPageDTO<>(rows, null);
+        }
+
+        List<T> content = new ArrayList<>(rows.subList(0, size));
+        return new CursorPageDTO<>(content, cursor(sort, content.get(size - 1)).encode());
+    }
+
+    /**
+     * This method retrieves a page by offset as a {@link Slice}, fetching one more row to know if there is a next page
+     * instead of counting all the rows that match the filters
+     *
+     * @param spec:     The filters of the listing, can be null
+     * @param pageable: The page and sort to retrieve
+     * @return The {@link Slice} with the elements of the page
+     */
+    public Slice<T> findSlice(Specification<T> spec, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(domainClass);
+        Root<T> root = query.from(domainClass);
+
+        Predicate filter = Objects.isNull(spec) ? null : spec.toPredicate(root, query, cb);
+        if (Objects.nonNull(filter)) {
+            query.where(filter);
+        }
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+
+        List<T> rows = entityManager.createQuery(query.select(root))
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList();
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        List<T> content = hasNext ? new ArrayList<>(rows.subList(0, pageable.getPageSize())) : rows;
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    /**
+     * This method retrieves a page by offset like {@link #findSlice}, selecting only the requested attributes
+     *
+     * @param spec:     The filters of the listing, can be null
+     * @param fields:   The attributes to select, in the order they are returned
+     * @param pageable: The page and sort to retrieve
+     * @return The {@link Slice} with a map from attribute to value for each element of the page
+     * @throws InvalidFieldException: When there are no fields or one of them can't be selected
+     */
+    public Slice<Map<String, Object>> findFields(Specification<T> spec, Collection<String> fields, Pageable pageable) throws InvalidFieldException {
+        Set<String> attributes = new LinkedHashSet<>(fields);
+        if (attributes.isEmpty()) {
+            throw new InvalidFieldException("At least one field must be selected");
+        }
+        List<String> invalid = attributes.stream().filter(field -> !selectable.contains(field)).collect(Collectors.toList());
+        if (!invalid.isEmpty()) {
+            throw new InvalidFieldException("Can't select the fields " + String.join(", ", invalid));
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<T> root = query.from(domainClass);
+        query.multiselect(attributes.stream().map(field -> root.get(field).alias(field)).collect(Collectors.toList()));
+
+        Predicate filter = Objects.isNull(spec) ? null : spec.toPredicate(root, query, cb);
+        if (Objects.nonNull(filter)) {
+            query.where(filter);
+        }
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+        }
+
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList();
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        List<Map<String, Object>> content = (hasNext ? rows.subList(0, pageable.getPageSize()) : rows)
+                .stream()
+                .map(KeysetSupport::toMap)
+                .collect(Collectors.toList());
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    private static Map<String, Object> toMap(Tuple tuple) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (TupleElement<?> element : tuple.getElements()) {
+            values.put(element.getAlias(), tuple.get(element));
+        }
+        return values;
+    }
+
+    /**
+     * The equivalent of (sort, id) > (value, lastId), expanded because JPA has no row value comparison
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate after(CriteriaBuilder cb, Root<T> root, KeysetCursor cursor) throws InvalidCursorException {
+        Path<Integer> id = root.get(ID);
+        if (ID.equals(cursor.getSort())) {
+            return cb.greaterThan(id, cursor.getId());
+        }
+
+        Path<Comparable> key = root.get(cursor.getSort());
+        Comparable value = parse(key.getJavaType(), cursor.getValue());
+        return cb.or(
+                cb.greaterThan(key, value),
+                cb.and(cb.equal(key, value), cb.greaterThan(id, cursor.getId()))
+        );
+    }
+
+    private KeysetCursor cursor(String sort, T last) {
+        BeanWrapper wrapper = new BeanWrapperImpl(last);
+        return new KeysetCursor(sort, String.valueOf(wrapper.getPropertyValue(sort)), (Integer) wrapper.getPropertyValue(ID));
+    }
+
+    private static Comparable<?> parse(Class<?> type, String value) throws InvalidCursorException {
+        try {
+            if (String.class.equals(type)) {
+                return value;
+            }
+            if (Integer.class.equals(type) || int.class.equals(type)) {
+                return Integer.valueOf(value);
+            }
+            if (LocalDate.class.equals(type)) {
+                return LocalDate.parse(value);
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new InvalidCursorException("Invalid cursor");
+        }
+
+        throw new InvalidCursorException("Can't paginate by cursor sorting by an attribute of type " + type.getSimpleName());
+    }
+}
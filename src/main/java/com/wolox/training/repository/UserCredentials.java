@@ -0,0 +1,11 @@
+package com.wolox.training.repository;
+
+/**
+ * The columns of a {@link com.wolox.training.models.User} needed to authenticate, without the entity nor its books
+ */
+public interface UserCredentials {
+
+    String getUsername();
+
+    String getPassword();
+}
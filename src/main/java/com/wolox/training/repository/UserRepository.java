@@ -4,18 +4,28 @@ import com.wolox.training.models.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.Optional;
 
-public interface UserRepository extends JpaRepository<User, Integer> {
+public interface UserRepository extends JpaRepository<User, Integer>, JpaSpecificationExecutor<User>, UserRepositoryCustom {
 
     Page<User> findAll(Pageable pageable);
 
     Optional<User> findTopByUsername(String username);
 
+    Optional<UserCredentials> findCredentialsByUsername(String username);
+
+    @Transactional
+    @Modifying
+    @Query("update users u set u.password = :password where u.username = :username")
+    int updatePassword(@Param("username") String username, @Param("password") String password);
+
     @Query("select u from users u " +
             "where (:sequence = '' or lower(u.name) like lower(concat('%', :sequence,'%'))) " +
             "and (cast(:begin as date) is null or u.birthDate >= :begin) and (cast(:end as date) is null or u.birthDate <= :end)")
@@ -0,0 +1,31 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.dto.CursorPageDTO;
+import com.wolox.training.exception.InvalidCursorException;
+import com.wolox.training.exception.InvalidFieldException;
+import com.wolox.training.models.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface UserRepositoryCustom {
+
+    Slice<User> findSlice(Specification<User> spec, Pageable pageable);
+
+    Slice<Map<String, Object>> findFields(Specification<User> spec, Collection<String> fields, Pageable pageable) throws InvalidFieldException;
+
+    CursorPageDTO<User> seek(Specification<User> spec, String sort, String cursor, int size) throws InvalidCursorException;
+
+    /**
+     * This method inserts a single row of user_book without loading the books of the user. The column book_id of
+     * user_book references the user and user_id the book, see {@link User#getBooks()}
+     *
+     * @throws org.springframework.dao.DataIntegrityViolationException: When the book is already a favorite of the user
+     */
+    int addFavorite(int userId, int bookId);
+
+    int removeFavorite(int userId, int bookId);
+}
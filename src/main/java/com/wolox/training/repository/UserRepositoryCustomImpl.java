@@ -0,0 +1,62 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.models.User;
+import org.hibernate.Cache;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Arrays;
+
+/**
+ * The password and the books of the users can't be selected as fields. The favorites are written with native
+ * queries that declare user_book as the only table they change, so Hibernate only invalidates the cached books of
+ * the users instead of every region of the second level cache, and the books of the user changed are evicted once
+ * the transaction commits
+ */
+public class UserRepositoryCustomImpl extends KeysetSupport<User> implements UserRepositoryCustom {
+
+    private static final String USER_BOOK = "user_book";
+    private static final String BOOKS_ROLE = User.class.getName() + ".books";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UserRepositoryCustomImpl() {
+        super(User.class, Arrays.asList("id", "username", "name", "birthDate"), "username", "name", "birthDate");
+    }
+
+    @Override
+    @Transactional
+    public int addFavorite(int userId, int bookId) {
+        return favorite("insert into user_book (book_id, user_id) values (:userId, :bookId)", userId, bookId);
+    }
+
+    @Override
+    @Transactional
+    public int removeFavorite(int userId, int bookId) {
+        return favorite("delete from user_book where book_id = :userId and user_id = :bookId", userId, bookId);
+    }
+
+    private int favorite(String sql, int userId, int bookId) {
+        int rows = entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(USER_BOOK)
+                .setParameter("userId", userId)
+                .setParameter("bookId", bookId)
+                .executeUpdate();
+        if (rows > 0) {
+            Cache cache = entityManager.getEntityManagerFactory().getCache().unwrap(Cache.class);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.evictCollectionData(BOOKS_ROLE, userId);
+                }
+            });
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,50 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Predicate;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This class builds the {@link Specification} used to search {@link User}, with the same filters of
+ * {@link UserRepository#findAllByBirthDateBetweenAndNameIsContainingIgnoreCase}
+ */
+public final class UserSpecifications {
+
+    private UserSpecifications() {
+    }
+
+    public static Specification<User> search(LocalDate begin, LocalDate end, String sequence) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (Objects.nonNull(sequence) && !sequence.isEmpty()) {
+                predicates.add(cb.like(cb.lower(root.get("name")), "%" + sequence.toLowerCase() + "%"));
+            }
+            if (Objects.nonNull(begin)) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("birthDate"), begin));
+            }
+            if (Objects.nonNull(end)) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("birthDate"), end));
+            }
+            return predicates.isEmpty() ? null : cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * This method filters the users that have the book as favorite
+     *
+     * @param bookId: The id of the book
+     */
+    public static Specification<User> withFavorite(int bookId) {
+        return (root, query, cb) -> {
+            Join<User, Book> books = root.join("books");
+            return cb.equal(books.get("id"), bookId);
+        };
+    }
+}
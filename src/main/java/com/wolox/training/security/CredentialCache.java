@@ -0,0 +1,118 @@
+package com.wolox.training.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class remembers for a short time the credentials verified with BCrypt, so the repeated Basic requests of a user
+ * skip the verification and the user lookup. The password is kept as an HMAC with a random key of this instance,
+ * never in plain text, and the entries of a user are invalidated when the user changes
+ */
+@Component
+public class CredentialCache implements MeterBinder {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final Cache<String, byte[]> credentials;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+    private final AtomicLong verifications = new AtomicLong();
+    private final AtomicLong verificationNanos = new AtomicLong();
+    private final AtomicLong savedNanos = new AtomicLong();
+
+    public CredentialCache(
+            @Value("${security.credential-cache.max-size:10000}") long maxSize,
+            @Value("${security.credential-cache.ttl:60000}") long ttl
+    ) {
+        this.credentials = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * This method checks if the credentials were verified recently
+     *
+     * @param username: The username presented
+     * @param password: The password presented
+     * @return True when the same credentials were verified and the user didn't change since then
+     */
+    public boolean matches(String username, String password) {
+        byte[] verified = credentials.getIfPresent(username);
+        if (Objects.isNull(verified) || !MessageDigest.isEqual(verified, hash(password))) {
+            return false;
+        }
+
+        long count = verifications.get();
+        if (count > 0) {
+            savedNanos.addAndGet(verificationNanos.get() / count);
+        }
+        return true;
+    }
+
+    public void put(String username, String password) {
+        credentials.put(username, hash(password));
+    }
+
+    /**
+     * This method records the time of a verification done with the password encoder, used to estimate the time saved
+     *
+     * @param nanos: The nanoseconds the lookup and the verification took
+     */
+    public void recordVerification(long nanos) {
+        verifications.incrementAndGet();
+        verificationNanos.addAndGet(nanos);
+    }
+
+    public void invalidate(String username) {
+        credentials.invalidate(username);
+    }
+
+    public void invalidateAll() {
+        credentials.invalidateAll();
+    }
+
+    private byte[] hash(String password) {
+        return mac.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can't create the credential hasher", e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, credentials, "security.credentials");
+        FunctionCounter.builder("security.credentials.saved", savedNanos, nanos -> nanos.get() / 1e9)
+                .description("Estimated time of password verification saved by the cached credentials")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+}
@@ -1,15 +1,14 @@
 package com.wolox.training.security;
 
+import com.wolox.training.exception.HashingRejectedException;
 import com.wolox.training.service.AuthService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
@@ -20,17 +19,40 @@ public class CustomAuthenticationProvider implements AuthenticationProvider {
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+
     @Override
     public Authentication authenticate(Authentication authentication)
             throws AuthenticationException {
 
         String username = authentication.getName();
         String password = authentication.getCredentials().toString();
-        UserDetails userDetails = authService.loadUserByUsername(username);
-
-        return encoder().matches(password, userDetails.getPassword())
-                ? new UsernamePasswordAuthenticationToken(username, password, new ArrayList<>())
-                : null;
+        if (credentialCache.matches(username, password)) {
+            return new UsernamePasswordAuthenticationToken(username, password, new ArrayList<>());
+        }
+
+        try {
+            long start = System.nanoTime();
+            UserDetails userDetails = authService.loadUserByUsername(username);
+            boolean matches = passwordHashingService.matches(password, userDetails.getPassword());
+            credentialCache.recordVerification(System.nanoTime() - start);
+            if (!matches) {
+                return null;
+            }
+
+            if (passwordHashingService.upgradeEncoding(userDetails.getPassword())) {
+                authService.updatePassword(userDetails, passwordHashingService.encode(password));
+            }
+        } catch (HashingRejectedException e) {
+            throw new AuthenticationServiceException(e.getMessage(), e);
+        }
+
+        credentialCache.put(username, password);
+        return new UsernamePasswordAuthenticationToken(username, password, new ArrayList<>());
     }
 
     @Override
@@ -38,9 +60,4 @@ public class CustomAuthenticationProvider implements AuthenticationProvider {
         return authentication.equals(UsernamePasswordAuthenticationToken.class);
     }
 
-    @Bean
-    public PasswordEncoder encoder() {
-        return new BCryptPasswordEncoder();
-    }
-
 }
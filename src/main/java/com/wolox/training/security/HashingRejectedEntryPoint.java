@@ -0,0 +1,32 @@
+package com.wolox.training.security;
+
+import com.wolox.training.exception.HashingRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.www.BasicAuthenticationEntryPoint;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * This class answers the Basic authentications the password hashing rejected because it is saturated with 503, like
+ * the sign up, so the clients retry later instead of taking them as bad credentials. The rest are answered with 401
+ */
+public class HashingRejectedEntryPoint extends BasicAuthenticationEntryPoint {
+
+    public HashingRejectedEntryPoint() {
+        setRealmName("Realm");
+    }
+
+    @Override
+    public void commence(HttpServletRequest request, HttpServletResponse response, AuthenticationException authException) throws IOException {
+        if (authException instanceof AuthenticationServiceException && authException.getCause() instanceof HashingRejectedException) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), authException.getMessage());
+            return;
+        }
+
+        super.commence(request, response, authException);
+    }
+}
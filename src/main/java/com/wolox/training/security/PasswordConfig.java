@@ -0,0 +1,50 @@
+package com.wolox.training.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class configures the BCrypt strength, fixed or calibrated at startup so a hash in this machine takes about the
+ * target time. The stored passwords with a lower strength are hashed again when their users log in
+ */
+@Configuration
+public class PasswordConfig {
+
+    private static final int MIN_STRENGTH = 10;
+    private static final int MAX_STRENGTH = 16;
+    private static final String SAMPLE = "calibration";
+
+    @Value("${security.bcrypt.strength:0}")
+    private int strength;
+
+    @Value("${security.bcrypt.target-time:100}")
+    private long targetTime;
+
+    @Bean
+    public PasswordEncoder encoder() {
+        return new BCryptPasswordEncoder(strength > 0 ? strength : calibrate());
+    }
+
+    /**
+     * Every strength doubles the time of a hash, so only the minimum strength is measured and the rest estimated
+     */
+    private int calibrate() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(MIN_STRENGTH);
+        encoder.encode(SAMPLE);
+        long start = System.nanoTime();
+        encoder.encode(SAMPLE);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        int calibrated = MIN_STRENGTH;
+        while (calibrated < MAX_STRENGTH && millis < targetTime) {
+            calibrated++;
+            millis *= 2;
+        }
+        return calibrated;
+    }
+}
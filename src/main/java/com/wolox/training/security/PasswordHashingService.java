@@ -0,0 +1,111 @@
+package com.wolox.training.security;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.wolox.training.exception.HashingRejectedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class runs the password hashes and verifications in their own bounded pool, so a burst of logins or sign ups
+ * doesn't take the request threads of the rest of the endpoints. When the queue is full or a hash waits longer than
+ * the timeout the request is rejected instead of queued
+ */
+@Component
+public class PasswordHashingService implements MeterBinder {
+
+    private final PasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final long timeout;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public PasswordHashingService(
+            PasswordEncoder encoder,
+            @Value("${security.hashing.threads:0}") int threads,
+            @Value("${security.hashing.queue-size:50}") int queueSize,
+            @Value("${security.hashing.timeout:5000}") long timeout
+    ) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.encoder = encoder;
+        this.timeout = timeout;
+        this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("password-hashing-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public String encode(CharSequence password) throws HashingRejectedException {
+        return submit(() -> encoder.encode(password));
+    }
+
+    public boolean matches(CharSequence password, String encoded) throws HashingRejectedException {
+        return submit(() -> encoder.matches(password, encoded));
+    }
+
+    /**
+     * This method checks if the stored password was hashed with a lower strength than the current one
+     *
+     * @param encoded: The stored password
+     * @return True when the password should be hashed again
+     */
+    public boolean upgradeEncoding(String encoded) {
+        return encoder.upgradeEncoding(encoded);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T submit(Callable<T> task) throws HashingRejectedException {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new HashingRejectedException("Too many password hashes in progress, try again later");
+        }
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.incrementAndGet();
+            throw new HashingRejectedException("Too many password hashes in progress, try again later");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new HashingRejectedException("Interrupted while hashing the password");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("security.hashing.queue", executor, pool -> pool.getQueue().size())
+                .description("Password hashes waiting for a thread")
+                .register(registry);
+        Gauge.builder("security.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hashes running")
+                .register(registry);
+        FunctionCounter.builder("security.hashing.rejected", rejected, AtomicLong::get)
+                .description("Password hashes rejected because the pool was saturated")
+                .register(registry);
+    }
+}
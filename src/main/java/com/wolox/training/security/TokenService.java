@@ -0,0 +1,109 @@
+package com.wolox.training.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * This class issues and verifies the access tokens: the username and the expiration signed with HMAC-SHA256, so a
+ * token is verified without the password hash nor the database. A token stays valid until it expires, the ttl bounds
+ * how long a deleted user or a changed password keeps access. Without a configured secret a random one is generated,
+ * and the tokens are valid only in this instance until it restarts
+ */
+@Component
+public class TokenService {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String SEPARATOR = ".";
+
+    private final SecretKeySpec key;
+    private final long ttl;
+    private final ThreadLocal<Mac> mac;
+
+    public TokenService(
+            @Value("${security.token.secret:}") String secret,
+            @Value("${security.token.ttl:900000}") long ttl
+    ) {
+        this.key = new SecretKeySpec(secret.isEmpty() ? randomSecret() : secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.ttl = ttl;
+        this.mac = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * This method issues a token for the user
+     *
+     * @param username: The username of the authenticated user
+     * @return The signed token
+     */
+    public String issue(String username) {
+        long expiresAt = System.currentTimeMillis() + ttl;
+        String payload = encode(username.getBytes(StandardCharsets.UTF_8)) + SEPARATOR + expiresAt;
+        return payload + SEPARATOR + sign(payload);
+    }
+
+    /**
+     * This method verifies the signature and the expiration of the token
+     *
+     * @param token: The token sent by the client
+     * @return The username of the token, empty when the token is malformed, forged or expired
+     */
+    public Optional<String> verify(String token) {
+        int signatureStart = token.lastIndexOf(SEPARATOR);
+        int expirationStart = token.indexOf(SEPARATOR);
+        if (expirationStart <= 0 || signatureStart == expirationStart) {
+            return Optional.empty();
+        }
+
+        String payload = token.substring(0, signatureStart);
+        byte[] signature = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(signature, token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII))) {
+            return Optional.empty();
+        }
+
+        try {
+            long expiresAt = Long.parseLong(payload.substring(expirationStart + 1));
+            if (expiresAt < System.currentTimeMillis()) {
+                return Optional.empty();
+            }
+            return Optional.of(new String(Base64.getUrlDecoder().decode(payload.substring(0, expirationStart)), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    private String sign(String payload) {
+        return encode(mac.get().doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(ALGORITHM);
+            instance.init(key);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can't create the token signer", e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static byte[] randomSecret() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+}
@@ -1,35 +1,104 @@
 package com.wolox.training.service;
 
-import com.wolox.training.models.User;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.wolox.training.repository.UserCredentials;
 import com.wolox.training.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * This class loads the {@link UserDetails} of the users with a projection of their credentials, and keeps them in a
+ * bounded cache that the changes of the users invalidate
+ */
 @Service
-public class AuthService implements UserDetailsService {
+public class AuthService implements UserDetailsService, UserDetailsPasswordService, MeterBinder {
 
     @Autowired
     private UserRepository userRepository;
 
+    private final Cache<String, UserDetails> users;
+
+    public AuthService(
+            @Value("${security.user-cache.max-size:10000}") long maxSize,
+            @Value("${security.user-cache.ttl:300000}") long ttl
+    ) {
+        this.users = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Optional<User> optional = userRepository.findTopByUsername(username);
+        UserDetails cached = users.getIfPresent(username);
+        if (Objects.nonNull(cached)) {
+            return cached;
+        }
+
+        Optional<UserCredentials> optional = userRepository.findCredentialsByUsername(username);
         if (optional.isEmpty()) {
             throw new UsernameNotFoundException("Username not found");
         }
 
-        User u = optional.get();
-        return org.springframework.security.core.userdetails.User
+        UserCredentials u = optional.get();
+        UserDetails userDetails = org.springframework.security.core.userdetails.User
                 .builder()
                 .username(u.getUsername())
                 .password(u.getPassword())
                 .authorities(new ArrayList<>())
                 .build();
+        users.put(username, userDetails);
+        return userDetails;
+    }
+
+    /**
+     * This method stores the password hashed again with the current strength, called after a successful login
+     *
+     * @param user:        The user authenticated
+     * @param newPassword: The password hashed with the current strength
+     * @return The {@link UserDetails} with the new password
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(user.getUsername(), newPassword);
+        evict(user.getUsername());
+        return org.springframework.security.core.userdetails.User
+                .withUserDetails(user)
+                .password(newPassword)
+                .build();
+    }
+
+    /**
+     * This method removes the cached {@link UserDetails} of the user, called when the user is created, updated or
+     * deleted
+     *
+     * @param username: The username of the user changed
+     */
+    public void evict(String username) {
+        users.invalidate(username);
+    }
+
+    public void evictAll() {
+        users.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, users, "security.users");
     }
 }
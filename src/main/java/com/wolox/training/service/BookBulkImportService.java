@@ -0,0 +1,289 @@
+package com.wolox.training.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wolox.training.dto.ImportReportDTO;
+import com.wolox.training.models.Book;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * This class imports large catalogs of {@link Book} read line by line from NDJSON or CSV. The rows are validated
+ * as they are read and written in JDBC batches, each one in its own transaction, so the memory used depends on the
+ * batch size and not on the size of the catalog. The inserts bypass Hibernate because the identity ids of
+ * {@link Book} disable its batching
+ */
+@Service
+public class BookBulkImportService implements MeterBinder {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    private static final String INSERT = "insert into book (genre, author, image, title, sub_title, publisher, year, pages, isbn) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private BookQueryCache bookQueryCache;
+
+    @Value("${books.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${books.import.max-errors:100}")
+    private int maxErrors;
+
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * This method imports the books of the reader. A CSV starts with a header with the names of the fields of the
+     * book, in any order. The rows with errors or with an isbn already stored are reported and skipped
+     *
+     * @param reader: The rows to import, one per line
+     * @param format: The format of the rows
+     * @return The {@link ImportReportDTO} with the rows imported, the rejected and the rows per second
+     * @throws IOException: When the body can't be read
+     */
+    public ImportReportDTO importBooks(Reader reader, Format format) throws IOException {
+        long start = System.nanoTime();
+        ImportReportDTO report = new ImportReportDTO();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        BufferedReader lines = new BufferedReader(reader);
+
+        List<String> header = null;
+        long line = 0;
+        if (format == Format.CSV) {
+            String first = lines.readLine();
+            if (Objects.isNull(first)) {
+                return report;
+            }
+            header = csv(first);
+            line++;
+        }
+
+        List<Row> batch = new ArrayList<>(batchSize);
+        String text;
+        while ((text = lines.readLine()) != null) {
+            line++;
+            if (text.isBlank()) {
+                continue;
+            }
+
+            report.addRows(1);
+            try {
+                batch.add(new Row(line, parse(text, header)));
+            } catch (JsonProcessingException e) {
+                reject(report, line, e.getOriginalMessage());
+            } catch (IllegalArgumentException e) {
+                reject(report, line, e.getMessage());
+            }
+            if (batch.size() == batchSize) {
+                write(batch, report, transaction);
+                batch.clear();
+            }
+        }
+        write(batch, report, transaction);
+
+        report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return report;
+    }
+
+    private Book parse(String text, List<String> header) throws JsonProcessingException {
+        Book book;
+        if (Objects.isNull(header)) {
+            book = objectMapper.readValue(text, Book.class);
+        } else {
+            List<String> values = csv(text);
+            if (values.size() != header.size()) {
+                throw new IllegalArgumentException("Expected " + header.size() + " columns but found " + values.size());
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                fields.put(header.get(i), values.get(i));
+            }
+            book = objectMapper.convertValue(fields, Book.class);
+        }
+
+        Set<ConstraintViolation<Book>> violations = validator.validate(book);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+        }
+        if (book.getPages() <= 0) {
+            throw new IllegalArgumentException("pages must be greater than 0");
+        }
+        // Stored like the isbn of the books from the external api, so the repeated and stored checks match them
+        book.setIsbn(BookInfoCache.normalize(book.getIsbn()));
+        return book;
+    }
+
+    /**
+     * This method inserts the rows of the batch whose isbn is not stored yet. The isbn of the batch are looked up
+     * with a single query, and if another import stores one of them after the lookup the rows are inserted one by
+     * one to find it. The cached listings the rows match are invalidated once they are stored
+     */
+    private void write(List<Row> batch, ImportReportDTO report, TransactionTemplate transaction) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<String, Row> unique = new LinkedHashMap<>();
+        for (Row row : batch) {
+            if (unique.putIfAbsent(row.book.getIsbn(), row) != null) {
+                reject(report, row.line, "The isbn " + row.book.getIsbn() + " is repeated in the import");
+            }
+        }
+
+        Set<String> stored = new HashSet<>(jdbcTemplate.queryForList("select isbn from book where isbn in (:isbns)",
+                new MapSqlParameterSource("isbns", unique.keySet()), String.class));
+        List<Row> rows = new ArrayList<>(unique.size());
+        for (Row row : unique.values()) {
+            if (stored.contains(row.book.getIsbn())) {
+                reject(report, row.line, "The isbn " + row.book.getIsbn() + " already exists");
+            } else {
+                rows.add(row);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            transaction.executeWithoutResult(status -> jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT,
+                    rows.stream().map(BookBulkImportService::values).collect(Collectors.toList())));
+            accept(report, rows.size());
+        } catch (DataIntegrityViolationException e) {
+            for (Row row : rows) {
+                try {
+                    jdbcTemplate.getJdbcTemplate().update(INSERT, values(row));
+                    accept(report, 1);
+                } catch (DuplicateKeyException ex) {
+                    // The isbn is the only unique key the rows write
+                    reject(report, row.line, "The isbn " + row.book.getIsbn() + " already exists");
+                } catch (DataIntegrityViolationException ex) {
+                    reject(report, row.line, ex.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+        bookQueryCache.invalidate(rows.stream().map(row -> row.book).collect(Collectors.toList()));
+    }
+
+    private void accept(ImportReportDTO report, int rows) {
+        report.addImported(rows);
+        imported.addAndGet(rows);
+    }
+
+    private void reject(ImportReportDTO report, long line, String message) {
+        report.addError(line, message, maxErrors);
+        rejected.incrementAndGet();
+    }
+
+    private static Object[] values(Row row) {
+        Book book = row.book;
+        return new Object[]{book.getGenre(), book.getAuthor(), book.getImage(), book.getTitle(), book.getSubTitle(),
+                book.getPublisher(), book.getYear(), book.getPages(), book.getIsbn()};
+    }
+
+    /**
+     * This method splits a CSV line. The values can be quoted to contain commas, with the quotes escaped as two
+     * quotes, and the empty values are null
+     */
+    private static List<String> csv(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == ',') {
+                values.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+                value.setLength(0);
+                wasQuoted = false;
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+        return values;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("books.import.rows", imported, AtomicLong::get)
+                .tag("result", "imported")
+                .description("Rows of the bulk imports stored")
+                .register(registry);
+        FunctionCounter.builder("books.import.rows", rejected, AtomicLong::get)
+                .tag("result", "rejected")
+                .description("Rows of the bulk imports rejected because they are invalid or their isbn exists")
+                .register(registry);
+    }
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    private static final class Row {
+
+        private final long line;
+        private final Book book;
+
+        private Row(long line, Book book) {
+            this.line = line;
+            this.book = book;
+        }
+    }
+}
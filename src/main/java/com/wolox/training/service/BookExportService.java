@@ -0,0 +1,83 @@
+package com.wolox.training.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.wolox.training.models.Book;
+import org.hibernate.CacheMode;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * This class writes the books of the catalog as NDJSON, one book per line. The books are read with a forward only
+ * stream fetching a few rows at a time from the database, and the persistence context is cleared every time it
+ * holds that number of books, so the memory used doesn't depend on the size of the catalog
+ */
+@Service
+public class BookExportService {
+
+    private static final int NEW_LINE = '\n';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${books.export.fetch-size:500}")
+    private int fetchSize;
+
+    /**
+     * This method writes the books sorted by id
+     *
+     * @param spec: The filters of the books to export, can be null
+     * @param out:  The stream where the books are written, it isn't closed
+     * @return The number of books written
+     * @throws IOException: When the books can't be written
+     */
+    @Transactional(readOnly = true)
+    public long export(Specification<Book> spec, OutputStream out) throws IOException {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Book> query = cb.createQuery(Book.class);
+        Root<Book> root = query.from(Book.class);
+        Predicate filter = Objects.isNull(spec) ? null : spec.toPredicate(root, query, cb);
+        if (Objects.nonNull(filter)) {
+            query.where(filter);
+        }
+        query.orderBy(cb.asc(root.get("id")));
+
+        ObjectWriter writer = objectMapper.writerFor(Book.class);
+        long written = 0;
+        try (Stream<Book> books = entityManager.createQuery(query)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                // The export reads the whole catalog, putting it in the second level cache would evict the hot books
+                .setHint(QueryHints.HINT_CACHE_MODE, CacheMode.IGNORE)
+                .getResultStream()) {
+            Iterator<Book> iterator = books.iterator();
+            while (iterator.hasNext()) {
+                out.write(writer.writeValueAsBytes(iterator.next()));
+                out.write(NEW_LINE);
+                if (++written % fetchSize == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        return written;
+    }
+}
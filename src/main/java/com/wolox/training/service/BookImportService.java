@@ -0,0 +1,311 @@
+package com.wolox.training.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.wolox.training.dto.BookDTO;
+import com.wolox.training.dto.BookResolveDTO;
+import com.wolox.training.exception.BookNotFoundException;
+import com.wolox.training.exception.ExternalApiException;
+import com.wolox.training.exception.TooManyOperationsException;
+import com.wolox.training.models.Book;
+import com.wolox.training.repository.BookRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * This class imports a {@link Book} by isbn, coalescing concurrent imports of the same isbn so only one of them
+ * calls the external api and saves the book while the others wait for its result
+ */
+@Service
+public class BookImportService implements MeterBinder {
+
+    @Value("${books.import.store-threads:4}")
+    private int storeThreads;
+
+    @Value("${books.resolve.max-size:500}")
+    private int maxResolveSize;
+
+    @Value("${books.resolve.lookup-batch-size:100}")
+    private int lookupBatchSize;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private OpenLibraryService openLibraryService;
+
+    @Autowired
+    private BookQueryCache bookQueryCache;
+
+    private final ConcurrentMap<String, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private ExecutorService stores;
+
+    /**
+     * The imported books are saved in this pool instead of the threads that read the responses of the external api,
+     * so a slow database never delays the responses of the other imports and never takes more connections than it has
+     */
+    @PostConstruct
+    public void init() {
+        stores = Executors.newFixedThreadPool(storeThreads,
+                new ThreadFactoryBuilder().setNameFormat("book-import-store-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stores.shutdownNow();
+    }
+
+    public Result importByIsbn(String isbn) throws IOException, BookNotFoundException, ExternalApiException {
+        return await(importByIsbnAsync(isbn));
+    }
+
+    /**
+     * This method find a {@link Book} by isbn code and follow the next performance:
+     * - If Book exist in database, retrieves the book
+     * - If book don't exist in database, search in external api, create and retrieves the book
+     * - If another import of the same isbn is in progress, retrieves its result as not created
+     * The caller isn't blocked while the external api responds, the book is saved in a pool of "books.import.store-threads"
+     *
+     * @param isbn: The code of Book
+     * @return The future of the {@link Result} with the book and if it was created, it fails with
+     * {@link BookNotFoundException} when book not found neither database nor external api, and with
+     * {@link IOException} or {@link ExternalApiException} when the external api fails
+     */
+    public CompletableFuture<Result> importByIsbnAsync(String isbn) {
+        String key = BookInfoCache.normalize(isbn);
+        CompletableFuture<Result> flight = new CompletableFuture<>();
+        CompletableFuture<Result> current = inFlight.putIfAbsent(key, flight);
+        if (current != null) {
+            coalesced.incrementAndGet();
+            // A dependent future, so a caller that cancels it doesn't cancel the import of the others. Only the
+            // import that started it creates the book
+            return current.thenApply(result -> result.isCreated() ? new Result(result.getBook(), false) : result);
+        }
+
+        load(key).whenComplete((result, error) -> {
+            inFlight.remove(key, flight);
+            if (Objects.isNull(error)) {
+                flight.complete(result);
+            } else {
+                flight.completeExceptionally(error instanceof CompletionException && Objects.nonNull(error.getCause())
+                        ? error.getCause()
+                        : error);
+            }
+        });
+        return flight.copy();
+    }
+
+    /**
+     * The isbn is normalized like the isbn of the books stored from the external api
+     */
+    private CompletableFuture<Result> load(String isbn) {
+        Optional<Book> optionalBook;
+        try {
+            optionalBook = bookRepository.findByIsbn(isbn);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (optionalBook.isPresent()) {
+            return CompletableFuture.completedFuture(new Result(new BookDTO(optionalBook.get()), false));
+        }
+
+        return openLibraryService.bookInfoAsync(isbn).thenApplyAsync(this::store, stores);
+    }
+
+    private Result store(BookDTO dto) {
+        try {
+            Book book = toBook(dto);
+            bookRepository.save(book);
+            bookQueryCache.invalidate(book);
+        } catch (DataIntegrityViolationException e) {
+            // The isbn is unique, another instance stored the book after the lookup
+            return new Result(bookRepository.findByIsbn(dto.getIsbn()).map(BookDTO::new).orElseThrow(() -> e), false);
+        }
+
+        return new Result(dto, true);
+    }
+
+    /**
+     * This method resolves several isbn codes at once: the books already stored are retrieved with a query every
+     * "books.resolve.lookup-batch-size" isbn codes, the rest are retrieved from the external api in multi isbn
+     * requests and saved together
+     *
+     * @param isbns: The codes of the books, up to "books.resolve.max-size"
+     * @return The {@link BookResolveDTO} with the books found, the isbn codes created and the not found
+     * @throws IOException:                When has errors with the external api
+     * @throws ExternalApiException:       When the external api responds with error
+     * @throws TooManyOperationsException: When the isbn codes exceed the configured max size
+     */
+    public BookResolveDTO resolve(Collection<String> isbns) throws IOException, ExternalApiException, TooManyOperationsException {
+        if (isbns.size() > maxResolveSize) {
+            throw new TooManyOperationsException("The max number of isbn codes is " + maxResolveSize);
+        }
+        BookResolveDTO result = new BookResolveDTO();
+        Set<String> keys = isbns.stream()
+                .map(BookInfoCache::normalize)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (keys.isEmpty()) {
+            return result;
+        }
+
+        Set<String> stored = new HashSet<>();
+        for (List<String> chunk : Lists.partition(new ArrayList<>(keys), lookupBatchSize)) {
+            for (Book book : bookRepository.findAllByIsbnIn(chunk)) {
+                result.addBook(new BookDTO(book));
+                stored.add(book.getIsbn());
+            }
+        }
+
+        List<String> missing = keys.stream().filter(isbn -> !stored.contains(isbn)).collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<String, BookDTO> fetched = openLibraryService.bookInfo(missing);
+        Map<String, BookDTO> storedMeanwhile = saveAll(fetched);
+
+        for (String isbn : missing) {
+            BookDTO dto = fetched.get(isbn);
+            if (Objects.isNull(dto)) {
+                result.addNotFound(isbn);
+            } else if (storedMeanwhile.containsKey(isbn)) {
+                result.addBook(storedMeanwhile.get(isbn));
+            } else {
+                result.addCreated(dto);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * This method saves the books fetched together. When another import stored some of them after the lookup the
+     * books are saved one by one, retrieving the ones already stored instead of failing the whole resolution
+     *
+     * @param fetched: The books fetched by normalized isbn
+     * @return The books stored meanwhile by another import, by normalized isbn
+     */
+    private Map<String, BookDTO> saveAll(Map<String, BookDTO> fetched) {
+        List<Book> books = fetched.values().stream().map(BookImportService::toBook).collect(Collectors.toList());
+        try {
+            bookRepository.saveAll(books);
+            bookQueryCache.invalidate(books);
+            return Collections.emptyMap();
+        } catch (DataIntegrityViolationException e) {
+            // The isbn is unique and the batch was rolled back, the books are saved again one by one
+        }
+
+        Map<String, BookDTO> storedMeanwhile = new HashMap<>();
+        List<Book> saved = new ArrayList<>();
+        for (Map.Entry<String, BookDTO> entry : fetched.entrySet()) {
+            Book book = toBook(entry.getValue());
+            try {
+                bookRepository.save(book);
+                saved.add(book);
+            } catch (DataIntegrityViolationException e) {
+                storedMeanwhile.put(entry.getKey(), bookRepository.findByIsbn(entry.getKey())
+                        .map(BookDTO::new)
+                        .orElseThrow(() -> e));
+            }
+        }
+        bookQueryCache.invalidate(saved);
+        return storedMeanwhile;
+    }
+
+    private static Book toBook(BookDTO dto) {
+        Book book = new Book();
+        book.setIsbn(dto.getIsbn());
+        book.setYear(dto.getPublishDate());
+        book.setTitle(dto.getTitle());
+        book.setSubTitle(dto.getSubtitle());
+        book.setAuthor(dto.getAuthors().get(0));
+        book.setPublisher(dto.getPublishers().get(0));
+        book.setPages(dto.getNumberOfPages());
+        book.setImage(dto.getImageUrl());
+        return book;
+    }
+
+    private Result await(CompletableFuture<Result> flight) throws IOException, BookNotFoundException, ExternalApiException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExternalApiException("Interrupted while waiting the book import");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof BookNotFoundException) {
+                throw (BookNotFoundException) cause;
+            }
+            if (cause instanceof ExternalApiException) {
+                throw (ExternalApiException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ExternalApiException(cause.getMessage());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("openlibrary.imports.coalesced", coalesced, AtomicLong::get)
+                .description("Imports that waited for an import of the same isbn already in progress")
+                .register(registry);
+        Gauge.builder("openlibrary.imports.in-flight", inFlight, ConcurrentMap::size)
+                .description("Distinct isbn imports in progress")
+                .register(registry);
+    }
+
+    public static class Result {
+
+        private final BookDTO book;
+        private final boolean created;
+
+        private Result(BookDTO book, boolean created) {
+            this.book = book;
+            this.created = created;
+        }
+
+        public BookDTO getBook() {
+            return book;
+        }
+
+        public boolean isCreated() {
+            return created;
+        }
+    }
+}
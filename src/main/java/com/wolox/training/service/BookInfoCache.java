@@ -0,0 +1,123 @@
+package com.wolox.training.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.wolox.training.dto.BookDTO;
+import com.wolox.training.exception.BookNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps the {@link BookDTO} retrieved from the external api by normalized isbn, and remembers for a
+ * shorter time the isbn codes the external api doesn't know
+ */
+@Component
+public class BookInfoCache implements MeterBinder {
+
+    private final Cache<String, BookDTO> books;
+    private final Cache<String, Boolean> notFound;
+
+    public BookInfoCache(
+            @Value("${external.api.cache.max-size:10000}") long maxSize,
+            @Value("${external.api.cache.ttl:86400000}") long ttl,
+            @Value("${external.api.cache.not-found-ttl:300000}") long notFoundTtl
+    ) {
+        this.books = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.notFound = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(notFoundTtl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * This method retrieves the {@link BookDTO} cached for the isbn, calling the loader only on a miss. The book
+     * loaded is cached before the future completes
+     *
+     * @param isbn:   The code of Book
+     * @param loader: Retrieves the book from the external api with the normalized isbn
+     * @return The future of the cached or loaded {@link BookDTO}, it fails with {@link BookNotFoundException} when
+     * the isbn is known as not found or the loader doesn't found it
+     */
+    public CompletableFuture<BookDTO> get(String isbn, Loader loader) {
+        String key = normalize(isbn);
+        BookDTO cached = books.getIfPresent(key);
+        if (Objects.nonNull(cached)) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        if (Objects.nonNull(notFound.getIfPresent(key))) {
+            return CompletableFuture.failedFuture(new BookNotFoundException("Book not found"));
+        }
+
+        CompletableFuture<BookDTO> result = new CompletableFuture<>();
+        loader.load(key).whenComplete((book, error) -> {
+            if (Objects.isNull(error)) {
+                books.put(key, book);
+                result.complete(book);
+                return;
+            }
+
+            Throwable cause = error instanceof CompletionException && Objects.nonNull(error.getCause()) ? error.getCause() : error;
+            if (cause instanceof BookNotFoundException) {
+                notFound.put(key, Boolean.TRUE);
+            }
+            result.completeExceptionally(cause);
+        });
+        return result;
+    }
+
+    public BookDTO getIfPresent(String isbn) {
+        return books.getIfPresent(normalize(isbn));
+    }
+
+    public boolean isNotFound(String isbn) {
+        return Objects.nonNull(notFound.getIfPresent(normalize(isbn)));
+    }
+
+    public void put(String isbn, BookDTO book) {
+        books.put(normalize(isbn), book);
+    }
+
+    public void putNotFound(String isbn) {
+        notFound.put(normalize(isbn), Boolean.TRUE);
+    }
+
+    public void invalidateAll() {
+        books.invalidateAll();
+        notFound.invalidateAll();
+    }
+
+    /**
+     * This method removes hyphens and spaces of the isbn, so "0-385-47257-9" and "0385472579" share entry
+     *
+     * @param isbn: The code of Book
+     * @return The isbn normalized
+     */
+    public static String normalize(String isbn) {
+        return isbn.replaceAll("[\\s-]", "").toUpperCase();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, books, "openlibrary.books");
+        GuavaCacheMetrics.monitor(registry, notFound, "openlibrary.books.not-found");
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        CompletableFuture<BookDTO> load(String isbn);
+    }
+}
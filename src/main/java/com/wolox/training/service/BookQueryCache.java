@@ -0,0 +1,274 @@
+package com.wolox.training.service;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.wolox.training.models.Book;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * This class keeps the pages of {@link Book} of the listings by filters, page and sort. When a book is created,
+ * updated or deleted only the pages of the filters the book matches are invalidated, the rest stay cached. Each page
+ * expires after the ttl of its filters: the listing without filters changes with every write, so it is kept for a
+ * shorter time than the filtered listings
+ */
+@Component
+public class BookQueryCache implements MeterBinder {
+
+    private final Cache<Key, Entry> pages;
+    private final Ticker ticker;
+    private final long ttl;
+    private final long unfilteredTtl;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    @Autowired
+    public BookQueryCache(
+            @Value("${books.query-cache.max-size:1000}") long maxSize,
+            @Value("${books.query-cache.ttl:60000}") long ttl,
+            @Value("${books.query-cache.unfiltered-ttl:5000}") long unfilteredTtl
+    ) {
+        this(maxSize, ttl, unfilteredTtl, Ticker.systemTicker());
+    }
+
+    /**
+     * The cache expires every page after the longest ttl, so the pages of shorter ttl read after it are discarded
+     * when read. Both expirations read the time of the ticker, so the tests control it
+     */
+    BookQueryCache(long maxSize, long ttl, long unfilteredTtl, Ticker ticker) {
+        this.ticker = ticker;
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.unfilteredTtl = TimeUnit.MILLISECONDS.toNanos(unfilteredTtl);
+        this.pages = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Math.max(ttl, unfilteredTtl), TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * This method retrieves the cached page of the listing, calling the loader only on a miss. A page loaded while
+     * a book was written is returned but not cached, because it could have been read before the write
+     *
+     * @param filters:  The filters of the listing, see {@link #filters}
+     * @param pageable: The page and sort of the listing
+     * @param loader:   Retrieves the page from the database
+     * @return The cached or loaded page
+     */
+    public Page<Book> page(Map<String, Object> filters, Pageable pageable, Supplier<Page<Book>> loader) {
+        Key key = new Key(filters, pageable);
+        Entry entry = pages.getIfPresent(key);
+        if (Objects.nonNull(entry)) {
+            if (ticker.read() - entry.expiresAt < 0) {
+                return entry.page;
+            }
+            pages.asMap().remove(key, entry);
+            expired.incrementAndGet();
+        }
+
+        long seen = generation.get();
+        Page<Book> page = loader.get();
+        synchronized (this) {
+            if (generation.get() == seen) {
+                pages.put(key, new Entry(page, ticker.read() + ttl(filters)));
+            } else {
+                discarded.incrementAndGet();
+            }
+        }
+        return page;
+    }
+
+    /**
+     * This method invalidates the pages of the listings whose filters match the book
+     *
+     * @param book: The book created, deleted, or the state before or after an update
+     */
+    public void invalidate(Book book) {
+        invalidate(attributes(book));
+    }
+
+    /**
+     * This method invalidates the pages of the listings whose filters match any of the books, checking each cached
+     * page once
+     *
+     * @param books: The books created together
+     */
+    public void invalidate(Collection<Book> books) {
+        invalidateMatching(books.stream().map(BookQueryCache::attributes).collect(Collectors.toList()));
+    }
+
+    /**
+     * This method invalidates the pages of the listings whose filters match the attributes of a book
+     *
+     * @param attributes: The attributes of the book, see {@link #attributes}
+     */
+    public void invalidate(Map<String, Object> attributes) {
+        invalidateMatching(Collections.singletonList(attributes));
+    }
+
+    private synchronized void invalidateMatching(List<Map<String, Object>> books) {
+        if (books.isEmpty()) {
+            return;
+        }
+
+        generation.incrementAndGet();
+        pages.asMap().keySet().removeIf(key -> {
+            // The listing without filters matches every book
+            boolean matches = books.stream().anyMatch(key::matches);
+            if (matches) {
+                invalidated.incrementAndGet();
+            }
+            return matches;
+        });
+    }
+
+    public synchronized void invalidateAll() {
+        generation.incrementAndGet();
+        pages.invalidateAll();
+    }
+
+    /**
+     * This method chooses the ttl of the pages of a listing by its filters, in nanoseconds
+     */
+    private long ttl(Map<String, Object> filters) {
+        return filters.isEmpty() ? unfilteredTtl : ttl;
+    }
+
+    /**
+     * This method normalizes the filters of a listing like {@link com.wolox.training.repository.BookSpecifications},
+     * keeping only the filters with value
+     */
+    public static Map<String, Object> filters(Integer id, String author, String genre, String image, String isbn,
+                                              Integer pages, String publisher, String subtitle, String title, String year) {
+        SortedMap<String, Object> filters = new TreeMap<>();
+        put(filters, "id", id);
+        put(filters, "author", author);
+        put(filters, "genre", genre);
+        put(filters, "image", image);
+        put(filters, "isbn", isbn);
+        put(filters, "pages", Objects.nonNull(pages) && pages > 0 ? pages : null);
+        put(filters, "publisher", publisher);
+        put(filters, "subTitle", subtitle);
+        put(filters, "title", title);
+        put(filters, "year", year);
+        return Collections.unmodifiableSortedMap(filters);
+    }
+
+    /**
+     * This method takes the attributes of a book that can be filtered, so the state of a book can be kept before
+     * it is updated. The id is left out while the book isn't stored, so the listings filtered by id are invalidated
+     * for any id
+     */
+    public static Map<String, Object> attributes(Book book) {
+        SortedMap<String, Object> attributes = new TreeMap<>();
+        if (book.getId() != 0) {
+            attributes.put("id", book.getId());
+        }
+        attributes.put("author", book.getAuthor());
+        attributes.put("genre", book.getGenre());
+        attributes.put("image", book.getImage());
+        attributes.put("isbn", book.getIsbn());
+        attributes.put("pages", book.getPages());
+        attributes.put("publisher", book.getPublisher());
+        attributes.put("subTitle", book.getSubTitle());
+        attributes.put("title", book.getTitle());
+        attributes.put("year", book.getYear());
+        return Collections.unmodifiableSortedMap(attributes);
+    }
+
+    private static void put(Map<String, Object> filters, String attribute, Object value) {
+        if (Objects.nonNull(value)) {
+            filters.put(attribute, value);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, pages, "books.queries");
+        FunctionCounter.builder("books.queries.invalidated", invalidated, AtomicLong::get)
+                .description("Cached pages invalidated because a book written matches their filters")
+                .register(registry);
+        FunctionCounter.builder("books.queries.discarded", discarded, AtomicLong::get)
+                .description("Pages loaded while a book was written, returned without caching them")
+                .register(registry);
+        FunctionCounter.builder("books.queries.expired", expired, AtomicLong::get)
+                .description("Cached pages read after the ttl of their filters, counted as hits and loaded again")
+                .register(registry);
+    }
+
+    private static final class Entry {
+
+        private final Page<Book> page;
+        private final long expiresAt;
+
+        private Entry(Page<Book> page, long expiresAt) {
+            this.page = page;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Key {
+
+        private final Map<String, Object> filters;
+        private final int page;
+        private final int size;
+        private final String sort;
+
+        private Key(Map<String, Object> filters, Pageable pageable) {
+            this.filters = filters;
+            this.page = pageable.getPageNumber();
+            this.size = pageable.getPageSize();
+            this.sort = pageable.getSort().toString();
+        }
+
+        /**
+         * A book matches when each filter equals its attribute, the attributes left out match any value
+         */
+        private boolean matches(Map<String, Object> attributes) {
+            return filters.entrySet()
+                    .stream()
+                    .allMatch(filter -> !attributes.containsKey(filter.getKey())
+                            || Objects.equals(filter.getValue(), attributes.get(filter.getKey())));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return page == key.page && size == key.size && filters.equals(key.filters) && sort.equals(key.sort);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filters, page, size, sort);
+        }
+    }
+}
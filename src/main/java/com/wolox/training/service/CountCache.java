@@ -0,0 +1,64 @@
+package com.wolox.training.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * This class keeps for a short time the total of elements of the unfiltered listings, so the clients that show a
+ * total don't run a count over the whole table on every page
+ */
+@Component
+public class CountCache implements MeterBinder {
+
+    private final Cache<String, Long> counts;
+
+    public CountCache(@Value("${listing.count-cache.ttl:30000}") long ttl) {
+        this.counts = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * This method completes a {@link Slice} with the cached total, counting only when the total expired
+     *
+     * @param slice:   The elements of the page
+     * @param key:     The name of the listing
+     * @param counter: Counts the elements of the listing
+     * @return The {@link Page} with the elements of the slice and the cached total
+     */
+    public <T> Page<T> page(Slice<T> slice, String key, Supplier<Long> counter) {
+        return new PageImpl<>(slice.getContent(), slice.getPageable(), count(key, counter));
+    }
+
+    public long count(String key, Supplier<Long> counter) {
+        try {
+            return counts.get(key, counter::get);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    public void invalidateAll() {
+        counts.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GuavaCacheMetrics.monitor(registry, counts, "listing.counts");
+    }
+}
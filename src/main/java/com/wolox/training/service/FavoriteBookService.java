@@ -0,0 +1,231 @@
+package com.wolox.training.service;
+
+import com.wolox.training.dto.FavoriteOperationDTO;
+import com.wolox.training.dto.FavoriteResultDTO;
+import com.wolox.training.exception.TooManyOperationsException;
+import com.wolox.training.models.User;
+import org.hibernate.cache.spi.access.CollectionDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * This class applies lists of add and remove operations on the favorite books of the users. The users, books and
+ * favorites involved are read with one query each, the operations are resolved in memory in order, and the rows that
+ * changed are written with one JDBC batch of inserts and one of deletes, all in a single transaction. The writes
+ * bypass Hibernate, so the cached books of the users changed are locked before the writes and invalidated once the
+ * transaction completes, like Hibernate does with the collections it writes.
+ * When another request adds some of the favorites meanwhile, the inserts are undone and the operations resolved
+ * again against the favorites read again, up to "favorites.bulk.max-attempts" times.
+ * The column book_id of user_book references the user and user_id the book, see
+ * {@link com.wolox.training.models.User#getBooks()}
+ */
+@Service
+public class FavoriteBookService {
+
+    private static final String INSERT = "insert into user_book (book_id, user_id) values (?, ?)";
+    private static final String DELETE = "delete from user_book where book_id = ? and user_id = ?";
+    private static final String BOOKS_ROLE = User.class.getName() + ".books";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${favorites.bulk.max-size:1000}")
+    private int maxSize;
+
+    @Value("${favorites.bulk.max-attempts:3}")
+    private int maxAttempts;
+
+    /**
+     * This method applies the operations in the order received
+     *
+     * @param operations: The books to add or remove of the favorites of each user
+     * @return The {@link FavoriteResultDTO} of each operation, in the same order
+     * @throws TooManyOperationsException: When the operations exceed the configured max size
+     */
+    @Transactional
+    public List<FavoriteResultDTO> apply(List<FavoriteOperationDTO> operations) throws TooManyOperationsException {
+        if (operations.size() > maxSize) {
+            throw new TooManyOperationsException("The max number of operations is " + maxSize);
+        }
+        List<FavoriteResultDTO> results = new ArrayList<>(operations.size());
+        if (operations.isEmpty()) {
+            return results;
+        }
+
+        Set<Integer> userIds = operations.stream().map(FavoriteOperationDTO::getUserId).collect(Collectors.toSet());
+        Set<Integer> bookIds = operations.stream().map(FavoriteOperationDTO::getBookId).collect(Collectors.toSet());
+        Set<Integer> users = existing("select id from users where id in (:ids)", userIds);
+        Set<Integer> books = existing("select id from book where id in (:ids)", bookIds);
+
+        for (int attempt = 1; ; attempt++) {
+            Set<Favorite> initial = favorites(userIds, bookIds);
+            Set<Favorite> current = new HashSet<>(initial);
+            for (FavoriteOperationDTO operation : operations) {
+                results.add(new FavoriteResultDTO(operation, resolve(operation, users, books, current)));
+            }
+
+            Set<Favorite> inserts = current.stream().filter(favorite -> !initial.contains(favorite)).collect(Collectors.toCollection(LinkedHashSet::new));
+            Set<Favorite> deletes = initial.stream().filter(favorite -> !current.contains(favorite)).collect(Collectors.toCollection(LinkedHashSet::new));
+            lockCachedBooks(inserts, deletes);
+            Savepoint savepoint = savepoint();
+            try {
+                batch(INSERT, inserts);
+            } catch (DuplicateKeyException e) {
+                // Another request added some of the favorites after the read, they are read again and the operations
+                // resolved against them, so those adds are reported as already owned instead of failing the rest
+                rollback(savepoint);
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                results.clear();
+                continue;
+            }
+            batch(DELETE, deletes);
+            return results;
+        }
+    }
+
+    /**
+     * This method takes the soft locks Hibernate takes on the cached books of a user it writes: until the transaction
+     * completes the books of the users changed are loaded from the database by every transaction and not cached, and
+     * releasing the locks invalidates them
+     */
+    private void lockCachedBooks(Set<Favorite> inserts, Set<Favorite> deletes) {
+        Set<Integer> changed = new HashSet<>();
+        inserts.forEach(favorite -> changed.add(favorite.userId));
+        deletes.forEach(favorite -> changed.add(favorite.userId));
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        CollectionPersister persister = session.getFactory().getMetamodel().collectionPersister(BOOKS_ROLE);
+        if (changed.isEmpty() || !persister.hasCache()) {
+            return;
+        }
+
+        CollectionDataAccess cache = persister.getCacheAccessStrategy();
+        Map<Object, SoftLock> locks = new HashMap<>();
+        for (Integer userId : changed) {
+            Object key = cache.generateCacheKey(userId, persister, session.getFactory(), session.getTenantIdentifier());
+            locks.put(key, cache.lockItem(session, key, null));
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                locks.forEach((key, lock) -> cache.unlockItem(session, key, lock));
+            }
+        });
+    }
+
+    private FavoriteResultDTO.Status resolve(FavoriteOperationDTO operation, Set<Integer> users, Set<Integer> books, Set<Favorite> current) {
+        if (!users.contains(operation.getUserId())) {
+            return FavoriteResultDTO.Status.USER_NOT_FOUND;
+        }
+        if (!books.contains(operation.getBookId())) {
+            return FavoriteResultDTO.Status.BOOK_NOT_FOUND;
+        }
+        if (Objects.isNull(operation.getAction())) {
+            return FavoriteResultDTO.Status.INVALID_ACTION;
+        }
+
+        Favorite favorite = new Favorite(operation.getUserId(), operation.getBookId());
+        if (operation.getAction() == FavoriteOperationDTO.Action.ADD) {
+            return current.add(favorite) ? FavoriteResultDTO.Status.ADDED : FavoriteResultDTO.Status.ALREADY_OWNED;
+        }
+        return current.remove(favorite) ? FavoriteResultDTO.Status.REMOVED : FavoriteResultDTO.Status.NOT_OWNED;
+    }
+
+    private Set<Integer> existing(String sql, Set<Integer> ids) {
+        return new HashSet<>(jdbcTemplate.queryForList(sql, new MapSqlParameterSource("ids", ids), Integer.class));
+    }
+
+    private Set<Favorite> favorites(Set<Integer> userIds, Set<Integer> bookIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("users", userIds)
+                .addValue("books", bookIds);
+        return new HashSet<>(jdbcTemplate.query(
+                "select book_id, user_id from user_book where book_id in (:users) and user_id in (:books)",
+                params,
+                (row, index) -> new Favorite(row.getInt("book_id"), row.getInt("user_id"))));
+    }
+
+    /**
+     * The savepoint is taken on the connection of the transaction, so a failed batch is undone without rolling back
+     * the whole transaction
+     */
+    private Savepoint savepoint() {
+        return jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Savepoint>) Connection::setSavepoint);
+    }
+
+    private void rollback(Savepoint savepoint) {
+        jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Void>) connection -> {
+            connection.rollback(savepoint);
+            return null;
+        });
+    }
+
+    private void batch(String sql, Set<Favorite> favorites) {
+        if (favorites.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> args = favorites.stream()
+                .map(favorite -> new Object[]{favorite.userId, favorite.bookId})
+                .collect(Collectors.toList());
+        jdbcTemplate.getJdbcTemplate().batchUpdate(sql, args);
+    }
+
+    private static final class Favorite {
+
+        private final int userId;
+        private final int bookId;
+
+        private Favorite(int userId, int bookId) {
+            this.userId = userId;
+            this.bookId = bookId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Favorite)) {
+                return false;
+            }
+            Favorite favorite = (Favorite) o;
+            return userId == favorite.userId && bookId == favorite.bookId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, bookId);
+        }
+    }
+}
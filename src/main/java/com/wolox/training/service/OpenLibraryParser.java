@@ -0,0 +1,138 @@
+package com.wolox.training.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.wolox.training.dto.BookDTO;
+import com.wolox.training.exception.ExternalApiException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * This class reads the response of the external api books endpoint as a stream, keeping only the fields needed by
+ * {@link BookDTO} and skipping the rest without building the json document in memory. The books that miss required
+ * fields are left out like the ones not found, so one incomplete book doesn't fail the rest of a multi isbn response
+ */
+public final class OpenLibraryParser {
+
+    private static final String BIBKEY_PREFIX = "ISBN:";
+
+    private OpenLibraryParser() {
+    }
+
+    /**
+     * This method parses a response like {"ISBN:0385472579": {"title": ..., "authors": [...], ...}, ...}
+     *
+     * @param stream:  The body of the response, already decompressed
+     * @param charset: The charset of the body
+     * @return The {@link BookDTO} by the isbn of its bibkey, the books that miss required fields are not included
+     * @throws IOException:          When the stream can't be read
+     * @throws ExternalApiException: When the body is not a valid response
+     */
+    public static Map<String, BookDTO> parse(InputStream stream, Charset charset) throws IOException, ExternalApiException {
+        Map<String, BookDTO> books = new HashMap<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(stream, charset))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String bibkey = reader.nextName();
+                String isbn = bibkey.startsWith(BIBKEY_PREFIX) ? bibkey.substring(BIBKEY_PREFIX.length()) : bibkey;
+                BookDTO book = readBook(isbn, reader);
+                if (Objects.nonNull(book)) {
+                    books.put(isbn, book);
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new ExternalApiException("External api response malformed: " + e.getMessage());
+        }
+
+        return books;
+    }
+
+    /**
+     * This method reads the fields of a book, returning null when it misses any of them
+     */
+    private static BookDTO readBook(String isbn, JsonReader reader) throws IOException {
+        String title = null;
+        String subtitle = null;
+        String publishDate = null;
+        String url = null;
+        Integer numberOfPages = null;
+        List<String> publishers = null;
+        List<String> authors = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "title":
+                    title = nextString(reader);
+                    break;
+                case "subtitle":
+                    subtitle = nextString(reader);
+                    break;
+                case "publish_date":
+                    publishDate = nextString(reader);
+                    break;
+                case "url":
+                    url = nextString(reader);
+                    break;
+                case "number_of_pages":
+                    numberOfPages = reader.nextInt();
+                    break;
+                case "publishers":
+                    publishers = readNames(reader);
+                    break;
+                case "authors":
+                    authors = readNames(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (Stream.of(title, subtitle, publishDate, url, numberOfPages, publishers, authors).anyMatch(Objects::isNull)) {
+            return null;
+        }
+
+        return new BookDTO(isbn, title, subtitle, publishers, publishDate, numberOfPages, authors, url);
+    }
+
+    /**
+     * This method reads an array like [{"name": "...", "url": "..."}, ...] keeping only the names
+     */
+    private static List<String> readNames(JsonReader reader) throws IOException {
+        List<String> names = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("name".equals(reader.nextName())) {
+                    names.add(nextString(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return names;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,121 @@
+package com.wolox.training.service;
+
+import com.wolox.training.dto.BookDTO;
+import com.wolox.training.exception.ExternalApiException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * This class streams the response of the external api books endpoint to {@link OpenLibraryParser} instead of
+ * buffering it whole: the body goes through a buffer of fixed size, the I/O thread stops reading the connection while
+ * the buffer is full and the parser reads it in the executor. A response holds at most the buffer in memory, and a
+ * thread of the executor while its body arrives
+ */
+class OpenLibraryResponseConsumer extends AbstractAsyncResponseConsumer<CompletableFuture<Map<String, BookDTO>>> {
+
+    private final Executor parsers;
+    private final int bufferSize;
+    private final CompletableFuture<Map<String, BookDTO>> books = new CompletableFuture<>();
+    private SharedInputBuffer buffer;
+    private boolean received;
+
+    OpenLibraryResponseConsumer(Executor parsers, int bufferSize) {
+        this.parsers = parsers;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        if (status >= HttpStatus.INTERNAL_SERVER_ERROR.value() || status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            books.completeExceptionally(new OpenLibraryService.ServerErrorException());
+        } else if (status != HttpStatus.OK.value()) {
+            books.completeExceptionally(new ExternalApiException("External api service error"));
+        }
+    }
+
+    /**
+     * The asynchronous client doesn't decompress the body, the parser reads it through a gzip stream when encoded
+     */
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+        if (books.isDone()) {
+            return;
+        }
+
+        SharedInputBuffer input = new SharedInputBuffer(bufferSize);
+        Charset charset = Optional.ofNullable(contentType).map(ContentType::getCharset).orElse(StandardCharsets.UTF_8);
+        Header encoding = entity.getContentEncoding();
+        boolean gzip = Objects.nonNull(encoding) && "gzip".equalsIgnoreCase(encoding.getValue());
+        try {
+            parsers.execute(() -> parse(input, charset, gzip));
+        } catch (RejectedExecutionException e) {
+            throw new IOException("External api response can't be read", e);
+        }
+        buffer = input;
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+        if (Objects.isNull(buffer)) {
+            // The body of an error is discarded, so the connection goes back to the pool instead of being closed
+            ByteBuffer discarded = ByteBuffer.allocate(1024);
+            while (decoder.read(discarded) > 0) {
+                discarded.clear();
+            }
+            return;
+        }
+
+        buffer.consumeContent(decoder, ioControl);
+    }
+
+    @Override
+    protected CompletableFuture<Map<String, BookDTO>> buildResult(HttpContext context) {
+        received = true;
+        if (Objects.isNull(buffer)) {
+            books.completeExceptionally(new ExternalApiException("External api response without body"));
+        }
+        return books;
+    }
+
+    /**
+     * A response received whole is left to the parser, a failed or cancelled one stops it
+     */
+    @Override
+    protected void releaseResources() {
+        if (!received && Objects.nonNull(buffer)) {
+            buffer.shutdown();
+        }
+    }
+
+    private void parse(SharedInputBuffer input, Charset charset, boolean gzip) {
+        // Closing the stream reads the rest of the body, so a parser that fails never leaves the connection suspended
+        try (InputStream content = gzip ? new GZIPInputStream(new ContentInputStream(input)) : new ContentInputStream(input)) {
+            books.complete(OpenLibraryParser.parse(content, charset));
+        } catch (IOException | ExternalApiException | RuntimeException e) {
+            books.completeExceptionally(e);
+        }
+    }
+}
@@ -1,19 +1,46 @@
 package com.wolox.training.service;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.wolox.training.dto.BookDTO;
 import com.wolox.training.exception.BookNotFoundException;
 import com.wolox.training.exception.ExternalApiException;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.apache.http.HttpHeaders;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
-import org.json.JSONObject;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class OpenLibraryService {
@@ -21,23 +48,293 @@ public class OpenLibraryService {
     @Value("${external.api.url}")
     private String apiUrl;
 
+    @Value("${external.api.batch-size:50}")
+    private int batchSize;
+
+    @Value("${external.api.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${external.api.retry.base-delay:100}")
+    private long baseDelay;
+
+    @Value("${external.api.retry.max-delay:1000}")
+    private long maxDelay;
+
+    @Value("${external.api.callback-threads:8}")
+    private int callbackThreads;
+
+    @Value("${external.api.response-buffer:8192}")
+    private int responseBuffer;
+
+    @Autowired
+    private CloseableHttpAsyncClient httpClient;
+
+    @Autowired
+    private BookInfoCache bookInfoCache;
+
+    @Autowired
+    private CircuitBreaker circuitBreaker;
+
+    @Autowired
+    private Bulkhead bulkhead;
+
+    @Autowired
+    private RetryBudget retryBudget;
+
+    @Autowired
+    private RequestHedger requestHedger;
+
+    private ExecutorService callbacks;
+
+    /**
+     * The responses are read and the futures completed in this pool instead of the I/O threads of the client, so
+     * the work chained to the futures never delays the rest of the responses
+     */
+    @PostConstruct
+    public void init() {
+        callbacks = Executors.newFixedThreadPool(callbackThreads,
+                new ThreadFactoryBuilder().setNameFormat("openlibrary-callback-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        callbacks.shutdownNow();
+    }
+
     public BookDTO bookInfo(String isbn) throws IOException, BookNotFoundException, ExternalApiException {
+        return await(bookInfoAsync(isbn));
+    }
 
-        HttpGet get = new HttpGet(apiUrl + "?bibkeys=ISBN:" + isbn + "&format=json&jscmd=data");
-        HttpResponse response = getClient().execute(get);
-        JSONObject json = new JSONObject(EntityUtils.toString(response.getEntity()));
-        if (response.getStatusLine().getStatusCode() != HttpStatus.OK.value()) {
-            throw new ExternalApiException("External api service error");
+    /**
+     * This method retrieves the book of the isbn without blocking the caller while the external api responds
+     *
+     * @param isbn: The code of Book
+     * @return The future of the {@link BookDTO}, it fails with {@link BookNotFoundException} when the book is not
+     * found, and with {@link IOException} or {@link ExternalApiException} when the external api fails
+     */
+    public CompletableFuture<BookDTO> bookInfoAsync(String isbn) {
+        return bookInfoCache.get(isbn, this::fetch);
+    }
+
+    /**
+     * This method retrieves the books of several isbn codes, asking the external api for the ones not cached
+     * in requests of up to "external.api.batch-size" isbn codes
+     *
+     * @param isbns: The codes of the books
+     * @return The {@link BookDTO} found by normalized isbn, the isbn codes not found or incomplete are not included
+     * @throws IOException:          When has errors with the external api
+     * @throws ExternalApiException: When the external api responds with error
+     */
+    public Map<String, BookDTO> bookInfo(Collection<String> isbns) throws IOException, ExternalApiException {
+        Map<String, BookDTO> books = new LinkedHashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String isbn : isbns) {
+            String key = BookInfoCache.normalize(isbn);
+            BookDTO cached = bookInfoCache.getIfPresent(key);
+            if (Objects.nonNull(cached)) {
+                books.put(key, cached);
+            } else if (!bookInfoCache.isNotFound(key)) {
+                missing.add(key);
+            }
         }
 
-        if (json.isEmpty()) {
-            throw new BookNotFoundException("Book not found");
+        for (List<String> chunk : Lists.partition(new ArrayList<>(missing), batchSize)) {
+            Map<String, BookDTO> fetched;
+            try {
+                fetched = await(fetch(chunk));
+            } catch (BookNotFoundException e) {
+                // The multi isbn requests leave the books not found out of the response instead of failing
+                throw new ExternalApiException(e.getMessage());
+            }
+            for (String isbn : chunk) {
+                BookDTO book = fetched.get(isbn);
+                if (Objects.isNull(book)) {
+                    bookInfoCache.putNotFound(isbn);
+                } else {
+                    bookInfoCache.put(isbn, book);
+                    books.put(isbn, book);
+                }
+            }
         }
 
-        return new BookDTO(isbn, json.getJSONObject("ISBN:" + isbn));
+        return books;
+    }
+
+    private CompletableFuture<BookDTO> fetch(String isbn) {
+        return fetch(Collections.singletonList(isbn)).thenCompose(books -> {
+            BookDTO book = books.get(isbn);
+            if (Objects.isNull(book)) {
+                return CompletableFuture.<BookDTO>failedFuture(new BookNotFoundException("Book not found"));
+            }
+
+            return CompletableFuture.completedFuture(book);
+        });
     }
 
-    private HttpClient getClient() {
-        return HttpClientBuilder.create().build();
+    /**
+     * This method retrieves the books from the external api: the call fails fast when the circuit breaker is open or
+     * there are too many calls in progress, and failed calls are retried with jittered backoff within the retry budget
+     */
+    private CompletableFuture<Map<String, BookDTO>> fetch(List<String> isbns) {
+        return retry(isbns, 1).exceptionallyCompose(error -> {
+            Throwable cause = cause(error);
+            if (cause instanceof CallNotPermittedException) {
+                return CompletableFuture.failedFuture(new ExternalApiException("External api unavailable, try again later"));
+            }
+            if (cause instanceof BulkheadFullException) {
+                return CompletableFuture.failedFuture(new ExternalApiException("External api busy, try again later"));
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
+
+    /**
+     * The retries wait the backoff in a timer instead of sleeping, so no thread is held between attempts
+     */
+    private CompletableFuture<Map<String, BookDTO>> retry(List<String> isbns, int attempt) {
+        return requestHedger.execute(() -> request(isbns), this::execute)
+                .thenApply(books -> {
+                    retryBudget.onSuccess();
+                    return books;
+                })
+                .exceptionallyCompose(error -> {
+                    Throwable cause = cause(error);
+                    boolean retryable = cause instanceof IOException || cause instanceof ServerErrorException;
+                    if (!retryable || attempt >= maxAttempts || !retryBudget.tryAcquire()) {
+                        return CompletableFuture.failedFuture(cause);
+                    }
+                    Executor delayed = CompletableFuture.delayedExecutor(backoff(attempt), TimeUnit.MILLISECONDS, callbacks);
+                    return CompletableFuture.supplyAsync(() -> retry(isbns, attempt + 1), delayed)
+                            .thenCompose(Function.identity());
+                });
+    }
+
+    private long backoff(int attempt) {
+        long delay = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+
+    /**
+     * This method sends the request taking a permission of the bulkhead and the circuit breaker, both are released
+     * when the response is read. Cancelling the future cancels the request
+     */
+    private CompletableFuture<Map<String, BookDTO>> execute(HttpGet get) {
+        try {
+            bulkhead.acquirePermission();
+        } catch (BulkheadFullException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            circuitBreaker.acquirePermission();
+        } catch (CallNotPermittedException e) {
+            bulkhead.onComplete();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, BookDTO>> books = new CompletableFuture<>();
+        Future<CompletableFuture<Map<String, BookDTO>>> call;
+        try {
+            call = httpClient.execute(HttpAsyncMethods.create(get), new OpenLibraryResponseConsumer(callbacks, responseBuffer),
+                    new FutureCallback<>() {
+                        @Override
+                        public void completed(CompletableFuture<Map<String, BookDTO>> parsed) {
+                            parsed.whenCompleteAsync((result, error) -> {
+                                try {
+                                    long elapsed = System.nanoTime() - start;
+                                    if (Objects.isNull(error)) {
+                                        circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                                        requestHedger.record(TimeUnit.NANOSECONDS.toMillis(elapsed));
+                                        books.complete(result);
+                                    } else {
+                                        circuitBreaker.onError(elapsed, TimeUnit.NANOSECONDS, error);
+                                        books.completeExceptionally(error);
+                                    }
+                                } finally {
+                                    bulkhead.onComplete();
+                                }
+                            }, callbacks);
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+                            circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                            bulkhead.onComplete();
+                            books.completeExceptionally(e);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            // Cancelled because the hedge of this request answered first, it isn't an error of the api
+                            circuitBreaker.releasePermission();
+                            bulkhead.onComplete();
+                            books.cancel(false);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            // The request wasn't sent, e.g. the client is stopped, so neither callback releases the permissions
+            circuitBreaker.releasePermission();
+            bulkhead.onComplete();
+            return CompletableFuture.failedFuture(e);
+        }
+        books.whenComplete((result, error) -> {
+            if (books.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        return books;
+    }
+
+    private HttpGet request(List<String> isbns) {
+        String bibkeys = isbns.stream().map(isbn -> "ISBN:" + isbn).collect(Collectors.joining(","));
+        HttpGet get = new HttpGet(apiUrl + "?bibkeys=" + bibkeys + "&format=json&jscmd=data");
+        get.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        return get;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, BookNotFoundException, ExternalApiException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ExternalApiException("Interrupted while waiting the external api");
+        } catch (ExecutionException e) {
+            Throwable cause = cause(e);
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof BookNotFoundException) {
+                throw (BookNotFoundException) cause;
+            }
+            if (cause instanceof ExternalApiException) {
+                throw (ExternalApiException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ExternalApiException(cause.getMessage());
+        }
+    }
+
+    /**
+     * This method removes the wrappers the futures add to the exceptions
+     */
+    private static Throwable cause(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && Objects.nonNull(cause.getCause())) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Errors of the external api that may succeed if the call is retried
+     */
+    static class ServerErrorException extends ExternalApiException {
+
+        ServerErrorException() {
+            super("External api service error");
+        }
     }
 }
@@ -0,0 +1,218 @@
+package com.wolox.training.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.http.client.methods.HttpGet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * This class sends a second identical request when the first one takes longer than a percentile of the latencies
+ * observed, returning the response that arrives first and cancelling the other one. The hedges are limited to a
+ * fraction of the requests so a slow external api doesn't receive twice the load. The requests are asynchronous, a
+ * single timer thread sends the hedges
+ */
+public class RequestHedger implements MeterBinder {
+
+    private static final double MAX_TOKENS = 10;
+
+    private final String name;
+    private final boolean enabled;
+    private final double percentile;
+    private final double maxRate;
+    private final int minSamples;
+    private final long[] latencies;
+    private final ScheduledExecutorService timer;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong won = new AtomicLong();
+    private int samples;
+    private int next;
+    private double tokens;
+
+    public RequestHedger(String name, boolean enabled, double percentile, double maxRate, int minSamples, int window) {
+        this.name = name;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.maxRate = maxRate;
+        this.minSamples = minSamples;
+        this.latencies = new long[window];
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat(name + "-hedge-%d").setDaemon(true).build());
+    }
+
+    /**
+     * This method executes the request, hedging it when enabled and there are enough latencies observed
+     *
+     * @param request: Creates the request to send, called once for the request and once for the hedge
+     * @param attempt: Sends the request and reads the response, cancelling the future cancels the request
+     * @return The response of the request that finished first successfully, cancelling it cancels both requests
+     */
+    public <T> CompletableFuture<T> execute(Supplier<HttpGet> request, Attempt<T> attempt) {
+        long delay = enabled ? hedgeDelay() : -1;
+        if (delay < 0) {
+            return attempt.run(request.get());
+        }
+
+        Race<T> race = new Race<>();
+        race.add(attempt.run(request.get()), false);
+        ScheduledFuture<?> hedge = schedule(() -> race.hedge(() -> attempt.run(request.get())), delay);
+        race.result.whenComplete((value, error) -> {
+            if (Objects.nonNull(hedge)) {
+                hedge.cancel(false);
+            }
+            if (race.result.isCancelled()) {
+                race.cancel();
+            }
+        });
+        return race.result;
+    }
+
+    /**
+     * This method records the latency of a successful request
+     *
+     * @param millis: The milliseconds the request took
+     */
+    public synchronized void record(long millis) {
+        latencies[next] = millis;
+        next = (next + 1) % latencies.length;
+        samples = Math.min(samples + 1, latencies.length);
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * When the timer can't take the hedge the request goes on alone, the hedge is never sent after it
+     */
+    private ScheduledFuture<?> schedule(Runnable hedge, long delay) {
+        try {
+            return timer.schedule(hedge, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private synchronized long hedgeDelay() {
+        tokens = Math.min(MAX_TOKENS, tokens + maxRate);
+        if (samples < minSamples) {
+            return -1;
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * samples) - 1;
+        return sorted[Math.max(0, Math.min(index, samples - 1))];
+    }
+
+    private synchronized boolean tryAcquireHedge() {
+        if (tokens < 1) {
+            return false;
+        }
+
+        tokens -= 1;
+        return true;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(name + ".hedges.sent", sent, AtomicLong::get)
+                .description("Hedge requests sent because the request took longer than the latency percentile")
+                .register(registry);
+        FunctionCounter.builder(name + ".hedges.won", won, AtomicLong::get)
+                .description("Hedge requests that finished before the request they hedged")
+                .register(registry);
+    }
+
+    @FunctionalInterface
+    public interface Attempt<T> {
+        CompletableFuture<T> run(HttpGet request);
+    }
+
+    /**
+     * The request and its hedge: the first one that succeeds completes the result and cancels the other, and the
+     * result fails only when every request sent failed. The lock only guards which request decides the result, the
+     * result is completed and the requests cancelled after releasing it, so the stages that depend on the result
+     * don't run holding it
+     */
+    private final class Race<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<CompletableFuture<T>> attempts = new ArrayList<>();
+        private int pending;
+        private boolean decided;
+
+        private void hedge(Supplier<CompletableFuture<T>> attempt) {
+            synchronized (this) {
+                if (decided || result.isDone() || !tryAcquireHedge()) {
+                    return;
+                }
+            }
+
+            sent.incrementAndGet();
+            add(attempt.get(), true);
+        }
+
+        private void add(CompletableFuture<T> attempt, boolean hedge) {
+            boolean late;
+            synchronized (this) {
+                late = decided || result.isDone();
+                attempts.add(attempt);
+                pending++;
+            }
+
+            if (late) {
+                attempt.cancel(true);
+            }
+            attempt.whenComplete((value, error) -> finished(attempt, hedge, value, error));
+        }
+
+        private void finished(CompletableFuture<T> attempt, boolean hedge, T value, Throwable error) {
+            List<CompletableFuture<T>> others;
+            synchronized (this) {
+                pending--;
+                if (decided || result.isDone() || (error != null && pending > 0)) {
+                    return;
+                }
+
+                decided = true;
+                others = attempts.stream().filter(other -> other != attempt).collect(Collectors.toList());
+            }
+
+            if (error == null) {
+                if (hedge) {
+                    won.incrementAndGet();
+                }
+                result.complete(value);
+                others.forEach(other -> other.cancel(true));
+            } else {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error);
+            }
+        }
+
+        private void cancel() {
+            List<CompletableFuture<T>> requests;
+            synchronized (this) {
+                requests = new ArrayList<>(attempts);
+            }
+            requests.forEach(attempt -> attempt.cancel(true));
+        }
+    }
+}
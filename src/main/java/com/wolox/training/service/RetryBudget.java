@@ -0,0 +1,66 @@
+package com.wolox.training.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class limits the retries made to an external api: every retry spends a token and every successful call gives
+ * back a fraction of one, so while the external api keeps failing the retries stop as soon as the tokens run out
+ */
+public class RetryBudget implements MeterBinder {
+
+    private final String name;
+    private final double maxTokens;
+    private final double tokenRatio;
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private double tokens;
+
+    public RetryBudget(String name, double maxTokens, double tokenRatio) {
+        this.name = name;
+        this.maxTokens = maxTokens;
+        this.tokenRatio = tokenRatio;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * This method spends a token for a retry
+     *
+     * @return true if the retry can be made, false when the budget is exhausted
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokens < 1) {
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        tokens -= 1;
+        retries.incrementAndGet();
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        tokens = Math.min(maxTokens, tokens + tokenRatio);
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(name + ".retries", retries, AtomicLong::get)
+                .description("Retries made")
+                .register(registry);
+        FunctionCounter.builder(name + ".retries.rejected", rejected, AtomicLong::get)
+                .description("Retries not made because the retry budget was exhausted")
+                .register(registry);
+        Gauge.builder(name + ".retries.budget", this, RetryBudget::getTokens)
+                .description("Retries available in the retry budget")
+                .register(registry);
+    }
+}
@@ -0,0 +1,71 @@
+package com.wolox.training.config;
+
+import com.wolox.training.models.Book;
+import com.wolox.training.repository.BookRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The unique constraint is dropped to store the rows an older schema allowed, so the context is discarded after
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import(UniqueIndexCheck.class)
+@TestPropertySource(properties = "jpa.unique-check.fail-on-duplicates=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DirtiesContext
+public class UniqueIndexCheckTest {
+
+    @Autowired
+    private UniqueIndexCheck uniqueIndexCheck;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void clean() {
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    public void givenUniqueValues_whenRun_thenStart() {
+        bookRepository.save(book("first"));
+        bookRepository.save(book("second"));
+
+        uniqueIndexCheck.run(null);
+    }
+
+    @Test
+    public void givenRepeatedIsbn_whenRun_thenFailReportingTheIndexAndValues() {
+        jdbcTemplate.execute("alter table book drop constraint if exists ux_book_isbn");
+        jdbcTemplate.execute("drop index if exists ux_book_isbn");
+        bookRepository.save(book("repeated"));
+        bookRepository.save(book("repeated"));
+        bookRepository.save(book("unique"));
+
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> uniqueIndexCheck.run(null));
+
+        assertThat(e.getMessage()).contains("ux_book_isbn has 1 repeated isbn values, e.g. repeated");
+        assertThat(e.getMessage()).doesNotContain("ux_users_username");
+    }
+
+    private static Book book(String isbn) {
+        return new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, isbn);
+    }
+}
@@ -0,0 +1,114 @@
+package com.wolox.training.controller;
+
+import com.wolox.training.exception.HashingRejectedException;
+import com.wolox.training.security.PasswordHashingService;
+import com.wolox.training.security.TokenService;
+import com.wolox.training.service.AuthService;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest({AuthController.class, GreetingController.class})
+public class AuthControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @MockBean
+    private AuthService authService;
+
+    @MockBean
+    private PasswordHashingService passwordHashingService;
+
+    private final String PATH = "/api/auth/login";
+    private final String GREETING = "/greeting";
+    private final String SPRING_USER = "nlpe";
+    private final String PASSWORD = "123456";
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenAuthenticatedUser_whenLogin_thenReturnToken() throws Exception {
+        mvc.perform(post(PATH))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tokenType").value("Bearer"))
+                .andExpect(res -> assertEquals(
+                        Optional.of(SPRING_USER),
+                        tokenService.verify(new JSONObject(res.getResponse().getContentAsString()).getString("accessToken"))
+                ));
+    }
+
+    @Test
+    public void givenToken_whenLogin_thenReturnUnauthorized() throws Exception {
+        mvc.perform(post(PATH)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenService.issue(SPRING_USER)))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void givenHashingSaturated_whenLogin_thenReturnServiceUnavailable() throws Exception {
+        given(authService.loadUserByUsername(SPRING_USER)).willReturn(user());
+        given(passwordHashingService.matches(any(), any())).willThrow(new HashingRejectedException("Too many password verifications"));
+
+        mvc.perform(post(PATH).with(httpBasic(SPRING_USER, PASSWORD)))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    public void givenWrongPassword_whenLogin_thenReturnUnauthorized() throws Exception {
+        given(authService.loadUserByUsername(SPRING_USER)).willReturn(user());
+        given(passwordHashingService.matches(any(), any())).willReturn(false);
+
+        mvc.perform(post(PATH).with(httpBasic(SPRING_USER, "wrong")))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void givenToken_whenRequest_thenAuthenticateWithoutLookup() throws Exception {
+        mvc.perform(get(GREETING)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + tokenService.issue(SPRING_USER)))
+                .andExpect(status().isOk());
+
+        verify(authService, never()).loadUserByUsername(any());
+    }
+
+    @Test
+    public void givenForgedToken_whenRequest_thenReturnUnauthorized() throws Exception {
+        String token = tokenService.issue(SPRING_USER);
+        String forged = token.substring(0, token.lastIndexOf('.') + 1) + "forged";
+
+        mvc.perform(get(GREETING)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + forged))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private UserDetails user() {
+        return User.builder().username(SPRING_USER).password(PASSWORD).authorities(new ArrayList<>()).build();
+    }
+}
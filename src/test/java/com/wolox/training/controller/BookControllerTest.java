@@ -2,10 +2,22 @@ package com.wolox.training.controller;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.WireMock;
+import com.wolox.training.config.HttpClientConfig;
+import com.wolox.training.config.ResilienceConfig;
 import com.wolox.training.dto.BookDTO;
+import com.wolox.training.dto.CursorPageDTO;
+import com.wolox.training.dto.ImportReportDTO;
+import com.wolox.training.exception.InvalidCursorException;
 import com.wolox.training.models.Book;
 import com.wolox.training.repository.BookRepository;
+import com.wolox.training.repository.UserRepository;
 import com.wolox.training.service.AuthService;
+import com.wolox.training.service.BookBulkImportService;
+import com.wolox.training.service.BookExportService;
+import com.wolox.training.service.BookImportService;
+import com.wolox.training.service.BookInfoCache;
+import com.wolox.training.service.BookQueryCache;
+import com.wolox.training.service.CountCache;
 import com.wolox.training.service.OpenLibraryService;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -20,7 +32,9 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.userdetails.User;
@@ -29,26 +43,46 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(BookController.class)
-@Import(value = OpenLibraryService.class)
+@Import(value = {OpenLibraryService.class, HttpClientConfig.class, ResilienceConfig.class, BookInfoCache.class, BookImportService.class, CountCache.class, BookQueryCache.class})
 public class BookControllerTest {
 
     @Autowired
@@ -57,12 +91,30 @@ public class BookControllerTest {
     @MockBean
     private BookRepository bookRepository;
 
+    @MockBean
+    private UserRepository userRepository;
+
     @MockBean
     private AuthService authService;
 
     @MockBean
     private PasswordEncoder passwordEncoder;
 
+    @MockBean
+    private BookBulkImportService bookBulkImportService;
+
+    @MockBean
+    private BookExportService bookExportService;
+
+    @Autowired
+    private BookInfoCache bookInfoCache;
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private BookQueryCache bookQueryCache;
+
     public static WireMockServer wireMockServer;
     private final String PATH = "/api/book";
     private final String SPRING_USER = "spring";
@@ -86,6 +138,9 @@ public class BookControllerTest {
         UserDetails userDetails = User.builder().username(SPRING_USER).password(SPRING_PASSWORD).authorities(new ArrayList<>()).build();
         given(authService.loadUserByUsername(SPRING_USER)).willReturn(userDetails);
         given(passwordEncoder.matches(SPRING_PASSWORD, SPRING_PASSWORD)).willReturn(true);
+        bookInfoCache.invalidateAll();
+        bookQueryCache.invalidateAll();
+        wireMockServer.resetAll();
     }
 
     @BeforeAll
@@ -113,14 +168,81 @@ public class BookControllerTest {
                 .andExpect(jsonPath("$['pageable']['paged']").value("true"));
     }
 
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenNoTotal_whenGetAll_thenReturnSliceWithoutCount() throws Exception {
+        List<Book> books = this.mockBooks();
+        PageRequest pageRequest = PageRequest.of(0, 5, Sort.by("id"));
+        given(bookRepository.findSlice(any(), eq(pageRequest))).willReturn(new SliceImpl<>(books, pageRequest, true));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH)
+                .param("total", "NONE")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.last").value(false))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+        verify(bookRepository, never()).count();
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenFields_whenGetAll_thenReturnPageOfFields() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("title", "title 1");
+        PageRequest pageRequest = PageRequest.of(0, 5, Sort.by("id"));
+        given(bookRepository.findFields(any(), eq(List.of("id", "title")), eq(pageRequest)))
+                .willReturn(new SliceImpl<>(Collections.singletonList(row), pageRequest, true));
+        given(bookRepository.count(any(Specification.class))).willReturn(12L);
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH)
+                .param("publisher", "publisher 1")
+                .param("fields", "id,title")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].title").value("title 1"))
+                .andExpect(jsonPath("$.content[0].isbn").doesNotExist())
+                .andExpect(jsonPath("$.totalElements").value(12));
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenCursor_whenGetAll_thenReturnCursorPage() throws Exception {
+        List<Book> books = this.mockBooks();
+        given(bookRepository.seek(any(), eq("title"), eq(""), eq(5))).willReturn(new CursorPageDTO<>(books, "next"));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH)
+                .param("cursor", "")
+                .param("sort", "title")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.next").value("next"))
+                .andExpect(jsonPath("$.last").value(false));
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenInvalidCursor_whenGetAll_thenReturnBadRequest() throws Exception {
+        given(bookRepository.seek(any(), any(), eq("invalid"), eq(5))).willThrow(new InvalidCursorException("Invalid cursor"));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH)
+                .param("cursor", "invalid")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
     @WithMockUser(value = SPRING_USER)
     @Test
     public void givenIsbn_whenGetBookByIsbn_thenReturnBook() throws Exception {
         Book b = this.mockBooks().get(0);
         given(bookRepository.findByIsbn(b.getIsbn())).willReturn(Optional.of(b));
 
-        mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + b.getIsbn())
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + b.getIsbn())
                 .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(res -> assertEquals(new BookDTO(b).toString(), res.getResponse().getContentAsString()));
     }
@@ -139,8 +261,12 @@ public class BookControllerTest {
         given(bookRepository.findByIsbn(b.getIsbn())).willReturn(Optional.empty());
         given(bookRepository.save(b)).willReturn(b);
 
-        mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + b.getIsbn())
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + b.getIsbn())
                 .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
                 .andExpect(status().isCreated())
                 .andExpect(res -> assertEquals(dto.toString(), res.getResponse().getContentAsString()));
     }
@@ -157,11 +283,284 @@ public class BookControllerTest {
                         .withBody("{}")));
 
         given(bookRepository.findByIsbn(b.getIsbn())).willReturn(Optional.empty());
-        mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + b.getIsbn())
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + b.getIsbn())
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotFound());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenUnknownIsbn_whenGetBookByIsbnTwice_thenCallExternalApiOnce() throws Exception {
+
+        Book b = this.mockBooks().get(0);
+        String url = "/api/books?bibkeys=ISBN:" + b.getIsbn() + "&format=json&jscmd=data";
+        wireMockServer.stubFor(get(urlEqualTo(url))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(HttpStatus.OK.value())
+                        .withBody("{}")));
+
+        given(bookRepository.findByIsbn(b.getIsbn())).willReturn(Optional.empty());
+        for (int i = 0; i < 2; i++) {
+            MvcResult result = mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + b.getIsbn())
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+
+            mvc.perform(asyncDispatch(result))
+                    .andExpect(status().isNotFound());
+        }
+
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo(url)));
+    }
+
+    @Test
+    public void givenConcurrentImports_whenImportSameIsbn_thenCallExternalApiAndSaveOnce() throws Exception {
+
+        Book b = this.mockBooks().get(0);
+        String url = "/api/books?bibkeys=ISBN:" + b.getIsbn() + "&format=json&jscmd=data";
+        wireMockServer.stubFor(get(urlEqualTo(url))
+                .willReturn(aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withFixedDelay(500)
+                        .withBodyFile("books.json")));
+
+        given(bookRepository.findByIsbn(b.getIsbn())).willReturn(Optional.empty());
+
+        int threads = 5;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<BookImportService.Result>> futures = IntStream.range(0, threads)
+                .mapToObj(i -> executor.submit(() -> {
+                    start.await();
+                    return bookImportService.importByIsbn(b.getIsbn());
+                }))
+                .collect(Collectors.toList());
+        start.countDown();
+
+        int created = 0;
+        for (Future<BookImportService.Result> future : futures) {
+            assertEquals(b.getTitle(), future.get().getBook().getTitle());
+            created += future.get().isCreated() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        assertEquals(1, created);
+        wireMockServer.verify(1, getRequestedFor(urlEqualTo(url)));
+        verify(bookRepository, times(1)).save(any());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenHyphenatedIsbn_whenGetBookByIsbn_thenLookUpTheNormalizedIsbn() throws Exception {
+
+        Book b = this.mockBooks().get(0);
+        given(bookRepository.findByIsbn(b.getIsbn())).willReturn(Optional.of(b));
+
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + b.getIsbn().substring(0, 3) + "-" + b.getIsbn().substring(3))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+        wireMockServer.verify(0, getRequestedFor(urlMatching("/api/books.*")));
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenIsbnList_whenResolve_thenReturnStoredCreatedAndNotFound() throws Exception {
+
+        List<Book> books = this.mockBooks();
+        Book stored = books.get(0);
+        Book external = books.get(1);
+        Book unknown = books.get(2);
+        String externalBook = "{" +
+                "\"url\":\"" + external.getImage() + "\"," +
+                "\"title\":\"" + external.getTitle() + "\"," +
+                "\"subtitle\":\"" + external.getSubTitle() + "\"," +
+                "\"publishers\":[{\"name\":\"" + external.getPublisher() + "\"}]," +
+                "\"publish_date\":\"" + external.getYear() + "\"," +
+                "\"number_of_pages\":" + external.getPages() + "," +
+                "\"authors\":[{\"name\":\"" + external.getAuthor() + "\"}]" +
+                "}";
+        wireMockServer.stubFor(get(urlEqualTo("/api/books?bibkeys=ISBN:" + external.getIsbn() + ",ISBN:" + unknown.getIsbn() + "&format=json&jscmd=data"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(HttpStatus.OK.value())
+                        .withBody("{\"ISBN:" + external.getIsbn() + "\":" + externalBook + "}")));
+
+        given(bookRepository.findAllByIsbnIn(any())).willReturn(Collections.singletonList(stored));
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH + "/resolve")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"" + stored.getIsbn() + "\",\"" + external.getIsbn() + "\",\"" + unknown.getIsbn() + "\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books.length()").value(2))
+                .andExpect(jsonPath("$.created[0]").value(external.getIsbn()))
+                .andExpect(jsonPath("$.notFound[0]").value(unknown.getIsbn()));
+        verify(bookRepository, times(1)).saveAll(any());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenBookStoredMeanwhile_whenResolve_thenReturnItAsFoundInsteadOfFailing() throws Exception {
+
+        List<Book> books = this.mockBooks();
+        Book external = books.get(1);
+        Book other = books.get(2);
+        wireMockServer.stubFor(get(urlEqualTo("/api/books?bibkeys=ISBN:" + external.getIsbn() + ",ISBN:" + other.getIsbn() + "&format=json&jscmd=data"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(HttpStatus.OK.value())
+                        .withBody("{" +
+                                "\"ISBN:" + external.getIsbn() + "\":" + this.externalBook(external) + "," +
+                                "\"ISBN:" + other.getIsbn() + "\":" + this.externalBook(other) +
+                                "}")));
+
+        // Another import stores the external book after the lookup, so only the other one can be saved
+        given(bookRepository.findAllByIsbnIn(any())).willReturn(Collections.emptyList());
+        given(bookRepository.saveAll(any())).willThrow(new DataIntegrityViolationException("duplicate isbn"));
+        given(bookRepository.save(any())).willAnswer(invocation -> {
+            Book book = invocation.getArgument(0);
+            if (book.getIsbn().equals(external.getIsbn())) {
+                throw new DataIntegrityViolationException("duplicate isbn");
+            }
+            return book;
+        });
+        given(bookRepository.findByIsbn(external.getIsbn())).willReturn(Optional.of(external));
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH + "/resolve")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"" + external.getIsbn() + "\",\"" + other.getIsbn() + "\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books.length()").value(2))
+                .andExpect(jsonPath("$.created.length()").value(1))
+                .andExpect(jsonPath("$.created[0]").value(other.getIsbn()))
+                .andExpect(jsonPath("$.notFound.length()").value(0));
+        verify(bookRepository, times(2)).save(any());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenTooManyIsbns_whenResolve_thenReturnBadRequest() throws Exception {
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH + "/resolve")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(isbnList(501)))
+                .andExpect(status().isBadRequest());
+        verify(bookRepository, never()).findAllByIsbnIn(any());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenStoredIsbns_whenResolve_thenLookUpInBatches() throws Exception {
+
+        given(bookRepository.findAllByIsbnIn(any())).willAnswer(invocation -> {
+            Collection<String> isbns = invocation.getArgument(0);
+            return isbns.stream().map(isbn -> {
+                Book book = new Book();
+                book.setIsbn(isbn);
+                book.setAuthor("author");
+                book.setPublisher("publisher");
+                return book;
+            }).collect(Collectors.toList());
+        });
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH + "/resolve")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(isbnList(250)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books.length()").value(250))
+                .andExpect(jsonPath("$.created.length()").value(0));
+        verify(bookRepository, times(3)).findAllByIsbnIn(any());
+        wireMockServer.verify(0, getRequestedFor(urlMatching("/api/books.*")));
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenBookId_whenFindUsers_thenReturnUsersWithoutBooks() throws Exception {
+        com.wolox.training.models.User user = new com.wolox.training.models.User();
+        user.setUsername("nestor");
+        user.setName("Nestor");
+        user.setBirthDate(LocalDate.of(1990, 1, 1));
+        user.setPassword("123456");
+        given(bookRepository.existsById(id)).willReturn(true);
+        given(userRepository.seek(any(), eq("id"), eq(null), eq(5)))
+                .willReturn(new CursorPageDTO<>(Collections.singletonList(user), null));
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + id + "/users")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].username").value("nestor"))
+                .andExpect(jsonPath("$.content[0].books").doesNotExist())
+                .andExpect(jsonPath("$.content[0].password").doesNotExist())
+                .andExpect(jsonPath("$.last").value(true));
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenUnknownBookId_whenFindUsers_thenReturnNotFound() throws Exception {
+        given(bookRepository.existsById(id)).willReturn(false);
+
+        mvc.perform(MockMvcRequestBuilders.get(PATH + "/" + id + "/users")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNotFound());
     }
 
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenSameFilters_whenSearchTwice_thenQueryOnce() throws Exception {
+        List<Book> books = this.mockBooks();
+        PageRequest pageRequest = PageRequest.of(0, 5, Sort.by("id"));
+        given(bookRepository.findAllByPublisherAndGenreAndYear(eq("publisher 1"), eq("Genre 1"), eq("2001"), any()))
+                .willReturn(new PageImpl<>(books.subList(0, 1), pageRequest, 1));
+
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(MockMvcRequestBuilders.get(PATH + "/search")
+                    .param("publisher", "publisher 1")
+                    .param("genre", "Genre 1")
+                    .param("year", "2001")
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalElements").value(1));
+        }
+
+        verify(bookRepository, times(1)).findAllByPublisherAndGenreAndYear(any(), any(), any(), any());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenCachedSearches_whenCreateBook_thenInvalidateOnlyTheMatchingSearch() throws Exception {
+        List<Book> books = this.mockBooks();
+        PageRequest pageRequest = PageRequest.of(0, 5, Sort.by("id"));
+        given(bookRepository.findAllByPublisherAndGenreAndYear(any(), any(), any(), any()))
+                .willReturn(new PageImpl<>(Collections.emptyList(), pageRequest, 0));
+        given(bookRepository.save(any())).willReturn(books.get(0));
+
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(MockMvcRequestBuilders.get(PATH + "/search").param("publisher", "publisher 1"))
+                    .andExpect(status().isOk());
+            mvc.perform(MockMvcRequestBuilders.get(PATH + "/search").param("publisher", "publisher 2"))
+                    .andExpect(status().isOk());
+        }
+        mvc.perform(MockMvcRequestBuilders.post(PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(books.get(0).toString()))
+                .andExpect(status().isCreated());
+        mvc.perform(MockMvcRequestBuilders.get(PATH + "/search").param("publisher", "publisher 1"))
+                .andExpect(status().isOk());
+        mvc.perform(MockMvcRequestBuilders.get(PATH + "/search").param("publisher", "publisher 2"))
+                .andExpect(status().isOk());
+
+        verify(bookRepository, times(2)).findAllByPublisherAndGenreAndYear(eq("publisher 1"), any(), any(), any());
+        verify(bookRepository, times(1)).findAllByPublisherAndGenreAndYear(eq("publisher 2"), any(), any(), any());
+    }
+
     @Test
     public void givenBook_whenCreateBook_thenReturnBook() throws Exception {
         Book b = this.mockBooks().get(0);
@@ -187,6 +586,56 @@ public class BookControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenFilters_whenExport_thenStreamNdjson() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write((body + "\n").getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(bookExportService).export(any(), any());
+
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get(PATH + "/export")
+                .param("publisher", "publisher 1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // The export has its own timeout instead of the one of the rest of the async requests
+        assertEquals(3600000L, result.getRequest().getAsyncContext().getTimeout());
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BookBulkImportService.NDJSON))
+                .andExpect(content().string(body + "\n"));
+        verify(bookExportService).export(any(), any());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenCsvBody_whenImport_thenReturnReport() throws Exception {
+        ImportReportDTO report = new ImportReportDTO();
+        report.addRows(2);
+        report.addImported(1);
+        report.addError(3, "The isbn 001122331 already exists", 10);
+        given(bookBulkImportService.importBooks(any(), eq(BookBulkImportService.Format.CSV))).willReturn(report);
+
+        mvc.perform(MockMvcRequestBuilders.post(PATH + "/import")
+                .contentType(BookBulkImportService.CSV)
+                .content("isbn,title\n001122330,title 0\n001122331,title 1\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(3));
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenJsonBody_whenImport_thenReturnUnsupportedMediaType() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.post(PATH + "/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
     @WithMockUser(value = SPRING_USER)
     @Test
     public void givenBookAndId_whenUpdateBook_thenReturnBook() throws Exception {
@@ -251,6 +700,24 @@ public class BookControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    private static String isbnList(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> "\"" + String.format("%010d", i) + "\"")
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    private String externalBook(Book book) {
+        return "{" +
+                "\"url\":\"" + book.getImage() + "\"," +
+                "\"title\":\"" + book.getTitle() + "\"," +
+                "\"subtitle\":\"" + book.getSubTitle() + "\"," +
+                "\"publishers\":[{\"name\":\"" + book.getPublisher() + "\"}]," +
+                "\"publish_date\":\"" + book.getYear() + "\"," +
+                "\"number_of_pages\":" + book.getPages() + "," +
+                "\"authors\":[{\"name\":\"" + book.getAuthor() + "\"}]" +
+                "}";
+    }
+
     private List<Book> mockBooks() {
         return IntStream.range(1, 11).mapToObj(i -> {
             Book b = new Book();
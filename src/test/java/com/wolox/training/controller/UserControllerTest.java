@@ -1,11 +1,18 @@
 package com.wolox.training.controller;
 
 
+import com.wolox.training.dto.CursorPageDTO;
+import com.wolox.training.dto.FavoriteOperationDTO;
+import com.wolox.training.dto.FavoriteResultDTO;
+import com.wolox.training.exception.InvalidFieldException;
 import com.wolox.training.models.Book;
 import com.wolox.training.models.User;
 import com.wolox.training.repository.BookRepository;
 import com.wolox.training.repository.UserRepository;
+import com.wolox.training.security.CredentialCache;
 import com.wolox.training.service.AuthService;
+import com.wolox.training.service.CountCache;
+import com.wolox.training.service.FavoriteBookService;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,10 +21,12 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -28,20 +37,28 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(UserController.class)
+@Import(CountCache.class)
 public class UserControllerTest {
 
     @Autowired
@@ -59,6 +76,12 @@ public class UserControllerTest {
     @MockBean
     private PasswordEncoder passwordEncoder;
 
+    @MockBean
+    private CredentialCache credentialCache;
+
+    @MockBean
+    private FavoriteBookService favoriteBookService;
+
     private final String PATH = "/api/user";
     private final String SPRING_USER = "nlpe";
     private User user;
@@ -114,6 +137,56 @@ public class UserControllerTest {
                 .andExpect(res -> jsonPath("$['pageable']['paged']").value("true"));
     }
 
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenCachedTotal_whenGetAllTwice_thenCountOnce() throws Exception {
+        List<User> users = Collections.singletonList(user);
+        PageRequest pageRequest = PageRequest.of(0, 5, Sort.by("id"));
+        given(userRepository.findSlice(null, pageRequest)).willReturn(new SliceImpl<>(users, pageRequest, true));
+        given(userRepository.count()).willReturn(42L);
+
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(get(PATH)
+                    .param("total", "CACHED")
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.totalElements").value(42));
+        }
+        verify(userRepository, times(1)).count();
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenFields_whenGetAll_thenReturnOnlyFields() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("username", "nestor");
+        PageRequest pageRequest = PageRequest.of(0, 5, Sort.by("id"));
+        given(userRepository.findFields(null, Arrays.asList("id", "username"), pageRequest))
+                .willReturn(new SliceImpl<>(Collections.singletonList(row), pageRequest, false));
+
+        mvc.perform(get(PATH)
+                .param("fields", "id,username")
+                .param("total", "NONE")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].username").value("nestor"))
+                .andExpect(jsonPath("$.content[0].books").doesNotExist());
+        verify(userRepository, never()).findAll(any(PageRequest.class));
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenPasswordField_whenSearch_thenReturnBadRequest() throws Exception {
+        given(userRepository.findFields(any(), eq(Collections.singletonList("password")), any()))
+                .willThrow(new InvalidFieldException("Can't select the fields password"));
+
+        mvc.perform(get(PATH + "/search")
+                .param("fields", "password")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
     @WithMockUser(value = SPRING_USER)
     @Test
     public void givenUser_whenGetAuthenticatedUser_theReturnUser() throws Exception {
@@ -213,6 +286,8 @@ public class UserControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk());
+        verify(credentialCache).invalidate(user.getUsername());
+        verify(authService).evict(user.getUsername());
     }
 
     @WithMockUser(value = SPRING_USER)
@@ -258,6 +333,80 @@ public class UserControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenUserIdAndBookId_whenAddFavorite_thenInsertRow() throws Exception {
+        given(userRepository.existsById(id)).willReturn(true);
+        given(bookRepository.existsById(bookId)).willReturn(true);
+
+        mvc.perform(post(PATH + "/" + id + "/books/" + bookId))
+                .andExpect(status().isCreated());
+        verify(userRepository).addFavorite(id, bookId);
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenFavoriteBook_whenAddFavorite_thenReturnBookAlreadyOwned() throws Exception {
+        given(userRepository.existsById(id)).willReturn(true);
+        given(bookRepository.existsById(bookId)).willReturn(true);
+        given(userRepository.addFavorite(id, bookId)).willThrow(DataIntegrityViolationException.class);
+
+        mvc.perform(post(PATH + "/" + id + "/books/" + bookId))
+                .andExpect(status().isBadRequest());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenNotFavoriteBook_whenRemoveFavorite_thenReturnNotFound() throws Exception {
+        given(userRepository.removeFavorite(id, bookId)).willReturn(0);
+
+        mvc.perform(delete(PATH + "/" + id + "/books/" + bookId))
+                .andExpect(status().isNotFound());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenUserId_whenGetBooks_thenReturnCursorPage() throws Exception {
+        given(userRepository.existsById(id)).willReturn(true);
+        given(bookRepository.seek(any(), eq("title"), eq(null), eq(2)))
+                .willReturn(new CursorPageDTO<>(Collections.singletonList(book), "next"));
+
+        mvc.perform(get(PATH + "/" + id + "/books")
+                .param("sort", "title")
+                .param("size", "2")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].isbn").value(book.getIsbn()))
+                .andExpect(jsonPath("$.next").value("next"));
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenUnknownUserId_whenGetBooks_thenReturnNotFound() throws Exception {
+        given(userRepository.existsById(id)).willReturn(false);
+
+        mvc.perform(get(PATH + "/" + id + "/books")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+
+    @WithMockUser(value = SPRING_USER)
+    @Test
+    public void givenOperations_whenApplyFavorites_thenReturnResultOfEach() throws Exception {
+        FavoriteOperationDTO add = new FavoriteOperationDTO(id, bookId, FavoriteOperationDTO.Action.ADD);
+        FavoriteOperationDTO remove = new FavoriteOperationDTO(id, 2, FavoriteOperationDTO.Action.REMOVE);
+        given(favoriteBookService.apply(any())).willReturn(Arrays.asList(
+                new FavoriteResultDTO(add, FavoriteResultDTO.Status.ADDED),
+                new FavoriteResultDTO(remove, FavoriteResultDTO.Status.NOT_OWNED)));
+
+        mvc.perform(post(PATH + "/favorites")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"userId\":1,\"bookId\":1,\"action\":\"ADD\"},{\"userId\":1,\"bookId\":2,\"action\":\"REMOVE\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("ADDED"))
+                .andExpect(jsonPath("$[1].status").value("NOT_OWNED"));
+    }
+
     @WithMockUser(value = SPRING_USER)
     @Test
     public void givenUserIdAndBookId_whenAddBookToUser_thenReturnUserNotFound() throws Exception {
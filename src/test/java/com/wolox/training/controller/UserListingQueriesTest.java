@@ -0,0 +1,103 @@
+package com.wolox.training.controller;
+
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import com.wolox.training.support.SqlCaptor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Counts the sql statements of each listing request over a database with users and favorite books, so a listing that
+ * loads the books of each user with its own query fails
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@Transactional
+public class UserListingQueriesTest {
+
+    private static final String PATH = "/api/user";
+    private static final int USERS = 20;
+    private static final int BOOKS_PER_USER = 3;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    public void init() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < BOOKS_PER_USER; i++) {
+            Book book = new Book("genre", "author", "image", "title" + i, "subtitle", "publisher", "2020", 100, "isbn" + i);
+            entityManager.persist(book);
+            books.add(book);
+        }
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUsername("user" + i);
+            user.setName("name" + i);
+            user.setBirthDate(LocalDate.of(1990, 1, 1));
+            user.setPassword("123456");
+            for (Book book : books) {
+                user.addBook(book);
+            }
+            entityManager.persist(user);
+        }
+        entityManager.flush();
+        // The requests must load the users and their books like a new session does
+        entityManager.clear();
+    }
+
+    @WithMockUser
+    @Test
+    public void givenUsersWithBooks_whenGetAll_thenLoadBooksOfThePageInOneQuery() throws Exception {
+        SqlCaptor.assertAtMost(3, () -> mvc.perform(get(PATH).param("size", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(10))
+                .andExpect(jsonPath("$.content[9].books.length()").value(BOOKS_PER_USER)));
+    }
+
+    @WithMockUser
+    @Test
+    public void givenUsersWithBooks_whenSearchWithoutTotal_thenLoadBooksOfThePageInOneQuery() throws Exception {
+        SqlCaptor.assertAtMost(2, () -> mvc.perform(get(PATH + "/search")
+                .param("sequence", "name")
+                .param("size", "10")
+                .param("total", "NONE"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[9].books.length()").value(BOOKS_PER_USER)));
+    }
+
+    @WithMockUser
+    @Test
+    public void givenUsersWithBooks_whenGetAllWithoutBooks_thenDontQueryBooks() throws Exception {
+        SqlCaptor.assertAtMost(2, () -> mvc.perform(get(PATH).param("size", "10").param("books", "false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].username").value("user0"))
+                .andExpect(jsonPath("$.content[0].books").doesNotExist()));
+
+        assertThat(SqlCaptor.statements()).noneMatch(statement -> statement.contains("user_book"));
+    }
+}
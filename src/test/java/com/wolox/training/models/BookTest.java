@@ -14,8 +14,10 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
@@ -85,7 +87,7 @@ public class BookTest {
         Book book4 = new Book("Genre4", "author4", "image4", "title4", "subtitle4", commonPublisher, commonYear, 400, "004");
         Book book5 = new Book(commonGenre, "author5", "image5", "title5", "subtitle5", commonPublisher, commonYear, 500, "005");
         Book book6 = new Book(commonGenre, "author6", "image6", "title6", "subtitle6", "publish6", commonYear, 600, "006");
-        Book book7 = new Book(commonGenre, "author6", "image6", "title6", "subtitle6", commonPublisher, "2013", 600, "006");
+        Book book7 = new Book(commonGenre, "author6", "image6", "title6", "subtitle6", commonPublisher, "2013", 600, "007");
 
         entityManager.persist(book1);
         entityManager.persist(book2);
@@ -117,9 +119,9 @@ public class BookTest {
         Book b = new Book("terror", "author1", "image1", "title1", "subtitle3", "publisher2", "2011", 150, "0001112");
         Book b2 = new Book("drama", "author2", "image3", "title1", "subtitle3", "publisher2", "2011", 250, "0001113");
         Book b3 = new Book("science", "author3", "image2", "title2", "subtitle3", "publisher2", "2020", 350, "0001114");
-        Book b4 = new Book("kids", "author1", "image1", "title2", "subtitle3", "publisher2", "2020", 250, "0001114");
-        Book b5 = new Book("drama", "author2", "image2", "title1", "subtitle1", "publisher3", "2015", 100, "0001113");
-        Book b6 = new Book("terror", "author3", "image1", "title3", "subtitle2", "publisher3", "2016", 10, "0001112");
+        Book b4 = new Book("kids", "author1", "image1", "title2", "subtitle3", "publisher2", "2020", 250, "0001115");
+        Book b5 = new Book("drama", "author2", "image2", "title1", "subtitle1", "publisher3", "2015", 100, "0001116");
+        Book b6 = new Book("terror", "author3", "image1", "title3", "subtitle2", "publisher3", "2016", 10, "0001117");
         Book b7 = new Book("science", "author3", "image3", "title1", "subtitle2", "publisher3", "2016", 1500, "0001111");
 
         entityManager.persist(b);
@@ -147,7 +149,7 @@ public class BookTest {
         List<Book> result4 = bookRepository.findAll(null, null, null, b5.getImage(), null, 0, null, null, null, null, page).getContent();
         assertThat(result4).isEqualTo(image);
 
-        List<Book> isbn = Arrays.asList(b3, b4);
+        List<Book> isbn = Collections.singletonList(b4);
         List<Book> result5 = bookRepository.findAll(null, null, null, null, b4.getIsbn(), 0, null, null, null, null, page).getContent();
         assertThat(result5).isEqualTo(isbn);
 
@@ -180,6 +182,18 @@ public class BookTest {
     }
 
 
+    @Test
+    public void givenBookInSet_whenPersistAndUpdateIsbn_thenKeepFindingIt() {
+        Set<Book> books = new HashSet<>(Collections.singleton(book));
+
+        entityManager.persist(book);
+        entityManager.flush();
+        book.setIsbn("000111225599");
+
+        assertThat(books.contains(book)).isTrue();
+        assertThat(books.remove(bookRepository.findById(book.getId()).get())).isTrue();
+    }
+
     @Test
     public void givenBookWithAuthorNull_whenCreateEntity_thenConstraintError() {
         Assertions.assertThrows(NullPointerException.class, () -> book.setAuthor(null));
@@ -1,5 +1,6 @@
 package com.wolox.training.models;
 
+import com.wolox.training.exception.BookAlreadyOwnedException;
 import com.wolox.training.repository.UserRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -11,8 +12,10 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -45,6 +48,27 @@ public class UserTest {
         entityManager.clear();
     }
 
+    @Test
+    public void givenThousandsOfStoredBooks_whenAddAndFindEach_thenKeepEveryBook() throws Exception {
+        int favorites = 5000;
+        List<Book> books = new ArrayList<>(favorites);
+        for (int i = 1; i <= favorites; i++) {
+            Book book = new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "isbn" + i);
+            ReflectionTestUtils.setField(book, "id", i);
+            books.add(book);
+        }
+
+        for (Book book : books) {
+            user.addBook(book);
+        }
+
+        // A hash code per book, so each add and lookup checks a single bucket instead of every favorite
+        assertThat(books.stream().map(Book::hashCode).distinct().count()).isEqualTo((long) favorites);
+        assertThat(user.getBooks().size()).isEqualTo(favorites);
+        assertThat(books.stream().allMatch(user.getBooks()::contains)).isTrue();
+        Assertions.assertThrows(BookAlreadyOwnedException.class, () -> user.addBook(books.get(favorites - 1)));
+    }
+
     @Test
     public void givenUser_whenCreateEntity_thenPersistSuccess() {
         entityManager.persist(user);
@@ -62,43 +86,42 @@ public class UserTest {
         LocalDate begin = LocalDate.of(1963, 1, 1);
         LocalDate end = LocalDate.of(1992, 12, 31);
         String charSequence = "pEr";
-        String username = "username";
         String password = "123456";
 
         User nestor = new User();
         nestor.setBirthDate(LocalDate.of(1993, 6, 11));
         nestor.setName("nestorperez");
-        nestor.setUsername(username);
+        nestor.setUsername("nestor");
         nestor.setPassword(password);
 
         User hidalgo = new User();
         hidalgo.setBirthDate(LocalDate.of(1960, 2, 10));
         hidalgo.setName("hidalgoperez");
-        hidalgo.setUsername(username);
+        hidalgo.setUsername("hidalgo");
         hidalgo.setPassword(password);
 
         User isabel = new User();
         isabel.setBirthDate(LocalDate.of(1990, 6, 24));
         isabel.setName("isabelperez");
-        isabel.setUsername(username);
+        isabel.setUsername("isabel");
         isabel.setPassword(password);
 
         User isbeth = new User();
         isbeth.setBirthDate(LocalDate.of(1964, 3, 30));
         isbeth.setName("isbethespina");
-        isbeth.setUsername(username);
+        isbeth.setUsername("isbeth");
         isbeth.setPassword(password);
 
         User zaida = new User();
         zaida.setBirthDate(LocalDate.of(1991, 10, 11));
         zaida.setName("zaidabriceno");
-        zaida.setUsername(username);
+        zaida.setUsername("zaida");
         zaida.setPassword(password);
 
         User cristian = new User();
         cristian.setBirthDate(LocalDate.of(1970, 6, 30));
         cristian.setName("cristianperez");
-        cristian.setUsername(username);
+        cristian.setUsername("cristian");
         cristian.setPassword(password);
 
         entityManager.persist(nestor);
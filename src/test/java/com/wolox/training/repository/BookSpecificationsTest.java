@@ -0,0 +1,110 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.support.SqlCaptor;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class BookSpecificationsTest {
+
+    private static final String[] COLUMNS = {"id", "author", "genre", "image", "isbn", "pages", "publisher", "sub_title", "title", "year"};
+    private static final Pattern PREDICATE = Pattern.compile("\\w+\\.(\\w+)=\\?");
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private final PageRequest page = PageRequest.of(0, 10);
+
+    @Test
+    public void givenEachFilterCombination_whenFindAll_thenQueryOnlyFilteredColumns() {
+        for (int mask = 0; mask < 1 << COLUMNS.length; mask++) {
+            int filters = mask;
+            SqlCaptor.clear();
+
+            bookRepository.findAll(
+                    isSet(filters, 0) ? 1 : null,
+                    isSet(filters, 1) ? "author" : null,
+                    isSet(filters, 2) ? "genre" : null,
+                    isSet(filters, 3) ? "image" : null,
+                    isSet(filters, 4) ? "isbn" : null,
+                    isSet(filters, 5) ? 100 : null,
+                    isSet(filters, 6) ? "publisher" : null,
+                    isSet(filters, 7) ? "subtitle" : null,
+                    isSet(filters, 8) ? "title" : null,
+                    isSet(filters, 9) ? "2020" : null,
+                    page
+            );
+
+            assertQueryColumns(filters, COLUMNS);
+        }
+    }
+
+    @Test
+    public void givenEachFilterCombination_whenFindBooks_thenQueryOnlyFilteredColumns() {
+        String[] columns = {"publisher", "genre", "year"};
+        for (int mask = 0; mask < 1 << columns.length; mask++) {
+            int filters = mask;
+            SqlCaptor.clear();
+
+            bookRepository.findAllByPublisherAndGenreAndYear(
+                    isSet(filters, 0) ? "publisher" : null,
+                    isSet(filters, 1) ? "genre" : null,
+                    isSet(filters, 2) ? "2020" : null,
+                    page
+            );
+
+            assertQueryColumns(filters, columns);
+        }
+    }
+
+    private void assertQueryColumns(int filters, String[] columns) {
+        String sql = SqlCaptor.statements()
+                .stream()
+                .filter(statement -> statement.startsWith("select") && !statement.contains("count("))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("The query was not executed"));
+
+        Set<String> expected = IntStream.range(0, columns.length)
+                .filter(i -> isSet(filters, i))
+                .mapToObj(i -> columns[i])
+                .collect(Collectors.toSet());
+
+        assertThat(sql).doesNotContain(" is null");
+        assertThat(whereColumns(sql)).isEqualTo(expected);
+        if (expected.isEmpty()) {
+            assertThat(sql).doesNotContain(" where ");
+        }
+    }
+
+    private Set<String> whereColumns(String sql) {
+        Set<String> columns = new HashSet<>();
+        int where = sql.indexOf(" where ");
+        if (where < 0) {
+            return columns;
+        }
+
+        Matcher matcher = PREDICATE.matcher(sql.substring(where));
+        while (matcher.find()) {
+            columns.add(matcher.group(1));
+        }
+        return columns;
+    }
+
+    private static boolean isSet(int mask, int bit) {
+        return (mask & (1 << bit)) != 0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.exception.BookAlreadyOwnedException;
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import com.wolox.training.support.SqlCaptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares adding a favorite through the entity, which loads every favorite of the user, with the insert of the
+ * single user_book row, for a user with 10k favorites
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class FavoriteBooksTest {
+
+    private static final int FAVORITES = 10000;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Connection connection;
+    private User user;
+    private Book first;
+    private Book second;
+
+    @BeforeEach
+    public void init() throws SQLException {
+        user = new User();
+        user.setUsername("username");
+        user.setName("name");
+        user.setBirthDate(LocalDate.of(1990, 1, 1));
+        user.setPassword("123456");
+        entityManager.persist(user);
+        first = entityManager.persist(new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "first"));
+        second = entityManager.persist(new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "second"));
+        entityManager.flush();
+
+        connection = DataSourceUtils.getConnection(dataSource);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into book (genre, author, image, title, sub_title, publisher, year, pages, isbn) " +
+                    "select 'genre', 'author', 'image', 'title', 'subtitle', 'publisher', '2020', 100, 'isbn' || x " +
+                    "from system_range(1, " + FAVORITES + ")");
+            // The column book_id of the join table references the user and user_id the book
+            statement.execute("insert into user_book (book_id, user_id) " +
+                    "select " + user.getId() + ", id from book where isbn like 'isbn%'");
+        }
+        entityManager.clear();
+    }
+
+    @Test
+    public void givenTenThousandFavorites_whenAddFavorite_thenInsertSingleRow() throws Exception {
+        SqlCaptor.clear();
+        userRepository.addFavorite(user.getId(), first.getId());
+
+        List<String> statements = SqlCaptor.statements();
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0)).startsWith("insert into user_book");
+
+        User loaded = userRepository.findById(user.getId()).orElseThrow(AssertionError::new);
+        loaded.addBook(entityManager.find(Book.class, second.getId()));
+        userRepository.save(loaded);
+        entityManager.flush();
+
+        assertThat(favorites()).isEqualTo(FAVORITES + 2);
+    }
+
+    @Test
+    public void givenFavorite_whenRemoveFavorite_thenDeleteSingleRow() throws Exception {
+        userRepository.addFavorite(user.getId(), first.getId());
+
+        assertThat(userRepository.removeFavorite(user.getId(), first.getId())).isEqualTo(1);
+        assertThat(userRepository.removeFavorite(user.getId(), first.getId())).isEqualTo(0);
+        assertThat(favorites()).isEqualTo(FAVORITES);
+    }
+
+    @Test
+    public void givenFavorite_whenAddBookToEntity_thenThrowAlreadyOwned() {
+        User loaded = userRepository.findById(user.getId()).orElseThrow(AssertionError::new);
+        Book favorite = loaded.getBooks().iterator().next();
+
+        Assertions.assertThrows(BookAlreadyOwnedException.class, () -> loaded.addBook(favorite));
+    }
+
+    @Test
+    public void givenFavorite_whenAddFavoriteAgain_thenViolateUniqueConstraint() {
+        userRepository.addFavorite(user.getId(), first.getId());
+
+        Assertions.assertThrows(DataIntegrityViolationException.class, () -> userRepository.addFavorite(user.getId(), first.getId()));
+    }
+
+    private long favorites() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select count(*) from user_book where book_id = ?")) {
+            statement.setInt(1, user.getId());
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+                return result.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.models.User;
+import com.wolox.training.support.SqlCaptor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks with the H2 EXPLAIN of the sql generated by the repositories that each query is resolved with an index
+ * instead of scanning the tables
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class IndexPlanTest {
+
+    private static final int BOOKS = 20000;
+    private static final int USERS = 2000;
+    private static final int BOOKS_PER_USER = 10;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Connection connection;
+
+    @BeforeEach
+    public void init() throws SQLException {
+        // The connection of the test transaction, so the rows are rolled back after each test
+        connection = DataSourceUtils.getConnection(dataSource);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into book (genre, author, image, title, sub_title, publisher, year, pages, isbn) " +
+                    "select 'genre' || mod(x, 20), 'author' || mod(x, 1000), 'image', 'title' || x, 'subtitle', " +
+                    "'publisher' || mod(x, 50), cast(1900 + mod(x, 120) as varchar), 100, 'isbn' || x " +
+                    "from system_range(1, " + BOOKS + ")");
+            statement.execute("insert into users (username, name, birth_date, password) " +
+                    "select 'user' || x, 'name' || x, date '1990-01-01', 'password' from system_range(1, " + USERS + ")");
+            // The column book_id of the join table references the user and user_id the book
+            statement.execute("insert into user_book (book_id, user_id) " +
+                    "select u.id, b.id from users u, book b where b.id <= (select min(id) from book) + " + (BOOKS_PER_USER - 1));
+            statement.execute("analyze");
+        }
+        SqlCaptor.clear();
+    }
+
+    @Test
+    public void whenFindByIsbn_thenUseIsbnIndex() throws SQLException {
+        bookRepository.findByIsbn("isbn10");
+
+        assertUsesIndex(lastSelect(), "UX_BOOK_ISBN", "isbn10");
+    }
+
+    @Test
+    public void whenFindAllByIsbnIn_thenUseIsbnIndex() throws SQLException {
+        bookRepository.findAllByIsbnIn(Arrays.asList("isbn10", "isbn20"));
+
+        assertUsesIndex(lastSelect(), "UX_BOOK_ISBN", "isbn10", "isbn20");
+    }
+
+    @Test
+    public void whenFindTopByAuthor_thenUseAuthorIndex() throws SQLException {
+        bookRepository.findTopByAuthor("author10");
+
+        assertUsesIndex(lastSelect(), "IX_BOOK_AUTHOR", "author10", 1);
+    }
+
+    @Test
+    public void whenFindAllByPublisherAndGenreAndYear_thenUseCompositeIndex() throws SQLException {
+        bookRepository.findAllByPublisherAndGenreAndYear("publisher10", "genre10", "1910", PageRequest.of(0, 10));
+
+        assertUsesIndex(lastSelect(), "IX_BOOK_PUBLISHER_GENRE_YEAR", "publisher10", "genre10", "1910", 10);
+    }
+
+    @Test
+    public void whenFindTopByUsername_thenUseUsernameIndex() throws SQLException {
+        userRepository.findTopByUsername("user10");
+
+        assertUsesIndex(lastSelect(), "UX_USERS_USERNAME", "user10", 1);
+    }
+
+    @Test
+    public void whenFindCredentialsByUsername_thenUseUsernameIndex() throws SQLException {
+        userRepository.findCredentialsByUsername("user10");
+
+        assertUsesIndex(lastSelect(), "UX_USERS_USERNAME", "user10");
+    }
+
+    @Test
+    public void whenLoadBooksOfUser_thenUseJoinTableIndex() throws SQLException {
+        User user = userRepository.findTopByUsername("user10").orElseThrow(AssertionError::new);
+        SqlCaptor.clear();
+
+        assertThat(user.getBooks()).hasSize(BOOKS_PER_USER);
+
+        assertUsesIndex(lastSelect(), "IX_USER_BOOK_BOOK_USER", user.getId());
+    }
+
+    private String lastSelect() {
+        return SqlCaptor.statements()
+                .stream()
+                .filter(statement -> statement.startsWith("select") && !statement.contains("count("))
+                .reduce((first, second) -> second)
+                .orElseThrow(() -> new AssertionError("The query was not executed"));
+    }
+
+    private void assertUsesIndex(String sql, String index, Object... params) throws SQLException {
+        String plan = explain(sql, params);
+
+        assertThat(plan).contains(index);
+        assertThat(plan).doesNotContain("tableScan");
+    }
+
+    private String explain(String sql, Object... params) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                StringBuilder plan = new StringBuilder();
+                while (result.next()) {
+                    plan.append(result.getString(1)).append('\n');
+                }
+                return plan.toString();
+            }
+        }
+    }
+}
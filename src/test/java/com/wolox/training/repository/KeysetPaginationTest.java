@@ -0,0 +1,218 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.dto.CursorPageDTO;
+import com.wolox.training.exception.InvalidCursorException;
+import com.wolox.training.exception.InvalidFieldException;
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import com.wolox.training.support.SqlCaptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class KeysetPaginationTest {
+
+    private static final int BOOKS = 23;
+    private static final int USERS = 17;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final List<Book> books = new ArrayList<>();
+    private final List<User> users = new ArrayList<>();
+
+    @BeforeEach
+    public void init() {
+        for (int i = 0; i < BOOKS; i++) {
+            Book book = new Book("genre", "author" + (i % 4), "image", "title" + i, "subtitle",
+                    "publisher" + (i % 2), "2020", 100 + i % 3, "isbn" + i);
+            books.add(entityManager.persist(book));
+        }
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUsername("username" + i);
+            user.setName(i % 2 == 0 ? "perez" + i : "gomez" + i);
+            user.setBirthDate(LocalDate.of(1990 + i % 5, 1, 1));
+            user.setPassword("123456");
+            users.add(entityManager.persist(user));
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    public void givenSortWithTies_whenSeekAllPages_thenReturnEveryBookOnceInOrder() throws InvalidCursorException {
+        List<Integer> expected = books.stream()
+                .sorted(Comparator.comparing(Book::getAuthor).thenComparing(Book::getId))
+                .map(Book::getId)
+                .collect(Collectors.toList());
+
+        assertThat(seekBooks(null, "author", 5)).isEqualTo(expected);
+    }
+
+    @Test
+    public void givenFilter_whenSeekAllPages_thenReturnFilteredBooksInOrder() throws InvalidCursorException {
+        List<Integer> expected = books.stream()
+                .filter(book -> book.getPublisher().equals("publisher1"))
+                .sorted(Comparator.comparing(Book::getPages).thenComparing(Book::getId))
+                .map(Book::getId)
+                .collect(Collectors.toList());
+
+        assertThat(seekBooks(BookSpecifications.filter("publisher1", null, null), "pages", 4)).isEqualTo(expected);
+    }
+
+    @Test
+    public void givenSearch_whenSeekAllPages_thenReturnFilteredUsersInOrder() throws InvalidCursorException {
+        LocalDate begin = LocalDate.of(1991, 1, 1);
+        List<Integer> expected = users.stream()
+                .filter(user -> user.getName().contains("per") && !user.getBirthDate().isBefore(begin))
+                .sorted(Comparator.comparing(User::getBirthDate).thenComparing(User::getId))
+                .map(User::getId)
+                .collect(Collectors.toList());
+
+        List<Integer> result = new ArrayList<>();
+        String cursor = "";
+        do {
+            CursorPageDTO<User> page = userRepository.seek(UserSpecifications.search(begin, null, "PER"), "birthDate", cursor, 3);
+            page.getContent().forEach(user -> result.add(user.getId()));
+            cursor = page.getNext();
+        } while (cursor != null);
+
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    public void givenExactPage_whenSeek_thenReturnLastPageWithoutCursor() throws InvalidCursorException {
+        CursorPageDTO<Book> page = bookRepository.seek(null, "id", null, BOOKS);
+
+        assertThat(page.getContent()).hasSize(BOOKS);
+        assertThat(page.isLast()).isTrue();
+    }
+
+    @Test
+    public void givenCursorOfAnotherSort_whenSeek_thenThrowInvalidCursor() throws InvalidCursorException {
+        String cursor = bookRepository.seek(null, "title", "", 5).getNext();
+
+        Assertions.assertThrows(InvalidCursorException.class, () -> bookRepository.seek(null, "author", cursor, 5));
+    }
+
+    @Test
+    public void givenMalformedCursor_whenSeek_thenThrowInvalidCursor() {
+        Assertions.assertThrows(InvalidCursorException.class, () -> bookRepository.seek(null, "id", "not a cursor", 5));
+        Assertions.assertThrows(InvalidCursorException.class, () -> bookRepository.seek(null, "genre", "", 5));
+    }
+
+    @Test
+    public void givenOffsetPage_whenFindSlice_thenReturnHasNextWithoutCount() {
+        SqlCaptor.clear();
+
+        Slice<Book> slice = bookRepository.findSlice(BookSpecifications.filter("publisher0", null, null), PageRequest.of(1, 5, Sort.by("id")));
+
+        assertThat(slice.getContent()).hasSize(5);
+        assertThat(slice.hasNext()).isTrue();
+        assertThat(SqlCaptor.statements()).noneMatch(statement -> statement.contains("count("));
+    }
+
+    @Test
+    public void givenFields_whenFindFields_thenSelectOnlyTheirColumns() throws InvalidFieldException {
+        SqlCaptor.clear();
+
+        Slice<Map<String, Object>> slice = bookRepository.findFields(BookSpecifications.filter("publisher0", null, null),
+                Arrays.asList("id", "title"), PageRequest.of(0, 5, Sort.by("id")));
+
+        Book first = books.get(0);
+        assertThat(slice.getContent()).hasSize(5);
+        assertThat(slice.hasNext()).isTrue();
+        assertThat(slice.getContent().get(0)).containsExactly(entry("id", first.getId()), entry("title", first.getTitle()));
+        String sql = SqlCaptor.statements().get(0);
+        assertThat(sql.substring(0, sql.indexOf(" from "))).contains("title").doesNotContain("author", "isbn", "publisher");
+    }
+
+    @Test
+    public void givenHiddenOrUnknownField_whenFindFields_thenThrowInvalidField() {
+        Assertions.assertThrows(InvalidFieldException.class,
+                () -> userRepository.findFields(null, Arrays.asList("username", "password"), PageRequest.of(0, 5)));
+        Assertions.assertThrows(InvalidFieldException.class,
+                () -> bookRepository.findFields(null, Arrays.asList("id", "users"), PageRequest.of(0, 5)));
+    }
+
+    @Test
+    public void givenFavorites_whenSeekBooksOfUser_thenReturnOnlyItsBooksInOrder() throws Exception {
+        User user = users.get(0);
+        for (int i = 0; i < 12; i++) {
+            user.addBook(books.get(i * 2));
+        }
+        users.get(1).addBook(books.get(1));
+        entityManager.flush();
+        List<Integer> expected = books.stream()
+                .filter(book -> user.getBooks().contains(book) && book.getPublisher().equals("publisher0"))
+                .sorted(Comparator.comparing(Book::getTitle).thenComparing(Book::getId))
+                .map(Book::getId)
+                .collect(Collectors.toList());
+
+        Specification<Book> spec = Specification.where(BookSpecifications.favoriteOf(user.getId()))
+                .and(BookSpecifications.filter("publisher0", null, null));
+
+        assertThat(seekBooks(spec, "title", 5)).isEqualTo(expected);
+    }
+
+    @Test
+    public void givenFavorites_whenSeekUsersOfBook_thenReturnOnlyUsersWithTheBook() throws Exception {
+        Book book = books.get(0);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < USERS; i += 3) {
+            users.get(i).addBook(book);
+            expected.add(users.get(i).getId());
+        }
+        entityManager.flush();
+
+        List<Integer> result = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPageDTO<User> page = userRepository.seek(UserSpecifications.withFavorite(book.getId()), "id", cursor, 2);
+            page.getContent().forEach(user -> result.add(user.getId()));
+            cursor = page.getNext();
+        } while (cursor != null);
+
+        assertThat(result).isEqualTo(expected);
+    }
+
+    private List<Integer> seekBooks(Specification<Book> spec, String sort, int size) throws InvalidCursorException {
+        List<Integer> result = new ArrayList<>();
+        String cursor = "";
+        do {
+            CursorPageDTO<Book> page = bookRepository.seek(spec, sort, cursor, size);
+            assertThat(page.getContent().size()).isLessThanOrEqualTo(size);
+            page.getContent().forEach(book -> result.add(book.getId()));
+            cursor = page.getNext();
+        } while (cursor != null);
+        return result;
+    }
+}
@@ -0,0 +1,211 @@
+package com.wolox.training.repository;
+
+import com.wolox.training.config.SecondLevelCacheConfig;
+import com.wolox.training.dto.FavoriteOperationDTO;
+import com.wolox.training.exception.TooManyOperationsException;
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import com.wolox.training.service.BookExportService;
+import com.wolox.training.service.FavoriteBookService;
+import com.wolox.training.support.SqlCaptor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the second level cache serves the lookups by id and that the writes, through the repositories or
+ * through JDBC, are seen by the next lookups. Each repository call runs in its own committed transaction
+ */
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import({SecondLevelCacheConfig.class, FavoriteBookService.class, BookExportService.class})
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SecondLevelCacheTest {
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FavoriteBookService favoriteBookService;
+
+    @Autowired
+    private BookExportService bookExportService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+    private Book book;
+    private User user;
+
+    @BeforeEach
+    public void init() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        book = bookRepository.save(new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "isbn"));
+        user = new User();
+        user.setUsername("nestor");
+        user.setName("nestor");
+        user.setBirthDate(LocalDate.of(1990, 1, 1));
+        user.setPassword("123456");
+        user = userRepository.save(user);
+        statistics.clear();
+    }
+
+    @AfterEach
+    public void clean() {
+        userRepository.deleteAll();
+        bookRepository.deleteAll();
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    public void givenStoredBook_whenFindById_thenServeFromCache() {
+        bookRepository.findById(book.getId());
+        SqlCaptor.clear();
+
+        assertThat(bookRepository.findById(book.getId())).isPresent();
+
+        assertThat(SqlCaptor.statements()).isEmpty();
+        assertThat(statistics.getDomainDataRegionStatistics(SecondLevelCacheConfig.BOOK_REGION).getHitCount()).isPositive();
+    }
+
+    @Test
+    public void givenUpdatedBook_whenFindById_thenReturnNewValues() {
+        Book cached = bookRepository.findById(book.getId()).orElseThrow(AssertionError::new);
+        cached.setTitle("new title");
+        bookRepository.save(cached);
+
+        assertThat(bookRepository.findById(book.getId()).map(Book::getTitle)).contains("new title");
+    }
+
+    @Test
+    public void givenDeletedBook_whenFindById_thenReturnEmpty() {
+        bookRepository.findById(book.getId());
+        bookRepository.deleteById(book.getId());
+
+        assertThat(bookRepository.findById(book.getId())).isEmpty();
+    }
+
+    @Test
+    public void givenPasswordUpdatedByQuery_whenFindById_thenReturnNewPassword() {
+        userRepository.findById(user.getId());
+        userRepository.updatePassword(user.getUsername(), "654321");
+
+        assertThat(userRepository.findById(user.getId()).map(User::getPassword)).contains("654321");
+    }
+
+    @Test
+    public void givenFavoriteAddedWithJdbc_whenLoadBooks_thenIncludeTheBook() throws Exception {
+        assertThat(booksOfUser()).isEmpty();
+
+        favoriteBookService.apply(Collections.singletonList(
+                new FavoriteOperationDTO(user.getId(), book.getId(), FavoriteOperationDTO.Action.ADD)));
+
+        assertThat(booksOfUser()).containsExactly(book.getId());
+        assertThat(booksOfUser()).containsExactly(book.getId());
+        assertThat(statistics.getDomainDataRegionStatistics(SecondLevelCacheConfig.USER_BOOKS_REGION).getHitCount()).isPositive();
+    }
+
+    @Test
+    public void givenBooksReadWhileFavoritesAreWritten_whenLoadBooksAfterCommit_thenIncludeTheBook() {
+        assertThat(booksOfUser()).isEmpty();
+
+        transaction(TransactionDefinition.PROPAGATION_REQUIRED).executeWithoutResult(status -> {
+            try {
+                favoriteBookService.apply(Collections.singletonList(
+                        new FavoriteOperationDTO(user.getId(), book.getId(), FavoriteOperationDTO.Action.ADD)));
+            } catch (TooManyOperationsException e) {
+                throw new AssertionError(e);
+            }
+            // The writing transaction sees its favorite and a concurrent one the committed favorites, neither
+            // of them is cached while the favorites are locked
+            assertThat(booksOfUser(TransactionDefinition.PROPAGATION_REQUIRED)).containsExactly(book.getId());
+            assertThat(booksOfUser(TransactionDefinition.PROPAGATION_REQUIRES_NEW)).isEmpty();
+        });
+
+        assertThat(booksOfUser()).containsExactly(book.getId());
+    }
+
+    @Test
+    public void givenFavoriteAddedAndRemovedWithNativeQuery_whenLoadBooks_thenSeeEachChange() {
+        assertThat(booksOfUser()).isEmpty();
+
+        userRepository.addFavorite(user.getId(), book.getId());
+        assertThat(booksOfUser()).containsExactly(book.getId());
+
+        userRepository.removeFavorite(user.getId(), book.getId());
+        assertThat(booksOfUser()).isEmpty();
+    }
+
+    @Test
+    public void givenCachedBook_whenAddFavoriteWithNativeQuery_thenKeepServingTheBookFromCache() {
+        bookRepository.findById(book.getId());
+        userRepository.addFavorite(user.getId(), book.getId());
+        statistics.clear();
+        SqlCaptor.clear();
+
+        assertThat(bookRepository.findById(book.getId())).isPresent();
+
+        assertThat(SqlCaptor.statements()).isEmpty();
+        assertThat(statistics.getDomainDataRegionStatistics(SecondLevelCacheConfig.BOOK_REGION).getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void givenCatalog_whenExport_thenDontCacheTheBooks() throws Exception {
+        entityManagerFactory.getCache().evictAll();
+
+        assertThat(bookExportService.export(null, new ByteArrayOutputStream())).isEqualTo(1);
+
+        assertThat(statistics.getDomainDataRegionStatistics(SecondLevelCacheConfig.BOOK_REGION).getPutCount()).isZero();
+        assertThat(entityManagerFactory.getCache().contains(Book.class, book.getId())).isFalse();
+    }
+
+    private Set<Integer> booksOfUser() {
+        return booksOfUser(TransactionDefinition.PROPAGATION_REQUIRED);
+    }
+
+    private Set<Integer> booksOfUser(int propagation) {
+        return transaction(propagation).execute(status -> userRepository.findById(user.getId())
+                .orElseThrow(AssertionError::new)
+                .getBooks()
+                .stream()
+                .map(Book::getId)
+                .collect(Collectors.toSet()));
+    }
+
+    private TransactionTemplate transaction(int propagation) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(propagation);
+        return transaction;
+    }
+}
@@ -0,0 +1,107 @@
+package com.wolox.training.security;
+
+import com.wolox.training.service.AuthService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+        classes = {CustomAuthenticationProvider.class, CredentialCache.class, PasswordHashingService.class, PasswordConfig.class},
+        properties = "security.bcrypt.strength=5")
+public class CustomAuthenticationProviderTest {
+
+    @Autowired
+    private CustomAuthenticationProvider provider;
+
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @MockBean
+    private AuthService authService;
+
+    private final String username = "nlpe";
+    private final String password = "123456";
+
+    @BeforeEach
+    public void init() {
+        credentialCache.invalidateAll();
+        clearInvocations(authService);
+        given(authService.loadUserByUsername(username)).willReturn(User.builder()
+                .username(username)
+                .password(new BCryptPasswordEncoder().encode(password))
+                .authorities(new ArrayList<>())
+                .build());
+    }
+
+    @Test
+    public void givenVerifiedCredentials_whenAuthenticateAgain_thenSkipLookup() {
+        assertNotNull(provider.authenticate(new UsernamePasswordAuthenticationToken(username, password)));
+        assertNotNull(provider.authenticate(new UsernamePasswordAuthenticationToken(username, password)));
+
+        verify(authService, times(1)).loadUserByUsername(username);
+    }
+
+    @Test
+    public void givenWrongPassword_whenAuthenticate_thenVerifyEveryTime() {
+        provider.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+
+        assertNull(provider.authenticate(new UsernamePasswordAuthenticationToken(username, "654321")));
+        assertNull(provider.authenticate(new UsernamePasswordAuthenticationToken(username, "654321")));
+        verify(authService, times(3)).loadUserByUsername(username);
+    }
+
+    @Test
+    public void givenPasswordWithLowerStrength_whenAuthenticate_thenHashAgain() {
+        UserDetails weak = User.builder()
+                .username(username)
+                .password(new BCryptPasswordEncoder(4).encode(password))
+                .authorities(new ArrayList<>())
+                .build();
+        given(authService.loadUserByUsername(username)).willReturn(weak);
+
+        assertNotNull(provider.authenticate(new UsernamePasswordAuthenticationToken(username, password)));
+
+        ArgumentCaptor<String> rehashed = ArgumentCaptor.forClass(String.class);
+        verify(authService).updatePassword(eq(weak), rehashed.capture());
+        assertTrue(rehashed.getValue().startsWith("$2a$05$"));
+    }
+
+    @Test
+    public void givenPasswordWithHigherStrength_whenAuthenticate_thenKeepHash() {
+        provider.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+
+        verify(authService, never()).updatePassword(any(), any());
+    }
+
+    @Test
+    public void givenInvalidatedUser_whenAuthenticate_thenVerifyAgain() {
+        provider.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+        credentialCache.invalidate(username);
+
+        assertNotNull(provider.authenticate(new UsernamePasswordAuthenticationToken(username, password)));
+        verify(authService, times(2)).loadUserByUsername(username);
+    }
+}
@@ -0,0 +1,71 @@
+package com.wolox.training.security;
+
+import com.wolox.training.exception.HashingRejectedException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class PasswordHashingServiceTest {
+
+    private final PasswordEncoder encoder = mock(PasswordEncoder.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService clients = Executors.newFixedThreadPool(2);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private PasswordHashingService service;
+
+    @AfterEach
+    public void teardown() {
+        release.countDown();
+        clients.shutdownNow();
+        service.shutdown();
+    }
+
+    @Test
+    public void givenSaturatedPool_whenEncode_thenRejectWithoutWaiting() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        given(encoder.encode(any())).willAnswer(invocation -> {
+            running.countDown();
+            release.await();
+            return "hash";
+        });
+        service = new PasswordHashingService(encoder, 1, 1, 5000);
+        service.bindTo(registry);
+
+        Future<String> first = clients.submit(() -> service.encode("first"));
+        running.await();
+        Future<String> queued = clients.submit(() -> service.encode("queued"));
+        Gauge queue = registry.get("security.hashing.queue").gauge();
+        while (queue.value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        Assertions.assertThrows(HashingRejectedException.class, () -> service.encode("rejected"));
+        release.countDown();
+        assertEquals("hash", first.get());
+        assertEquals("hash", queued.get());
+    }
+
+    @Test
+    public void givenSlowHash_whenEncode_thenRejectAfterTimeout() {
+        given(encoder.encode(any())).willAnswer(invocation -> {
+            release.await();
+            return "hash";
+        });
+        service = new PasswordHashingService(encoder, 1, 1, 100);
+
+        Assertions.assertThrows(HashingRejectedException.class, () -> service.encode("slow"));
+    }
+}
@@ -0,0 +1,38 @@
+package com.wolox.training.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenServiceTest {
+
+    private final TokenService tokenService = new TokenService("secret", 60000);
+
+    @Test
+    public void givenIssuedToken_whenVerify_thenReturnUsername() {
+        assertEquals(Optional.of("nlpe"), tokenService.verify(tokenService.issue("nlpe")));
+    }
+
+    @Test
+    public void givenTokenOfAnotherSecret_whenVerify_thenReturnEmpty() {
+        String token = new TokenService("other", 60000).issue("nlpe");
+
+        assertEquals(Optional.empty(), tokenService.verify(token));
+    }
+
+    @Test
+    public void givenExpiredToken_whenVerify_thenReturnEmpty() {
+        String token = new TokenService("secret", -1).issue("nlpe");
+
+        assertEquals(Optional.empty(), tokenService.verify(token));
+    }
+
+    @Test
+    public void givenMalformedToken_whenVerify_thenReturnEmpty() {
+        assertEquals(Optional.empty(), tokenService.verify("token"));
+        assertEquals(Optional.empty(), tokenService.verify("a.b"));
+        assertEquals(Optional.empty(), tokenService.verify("a.b.c"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.wolox.training.service;
+
+import com.wolox.training.repository.UserCredentials;
+import com.wolox.training.repository.UserRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AuthService.class)
+public class AuthServiceTest {
+
+    @Autowired
+    private AuthService authService;
+
+    @MockBean
+    private UserRepository userRepository;
+
+    private final String username = "nlpe";
+
+    @BeforeEach
+    public void init() {
+        authService.evictAll();
+        clearInvocations(userRepository);
+        given(userRepository.findCredentialsByUsername(username)).willReturn(Optional.of(new UserCredentials() {
+            @Override
+            public String getUsername() {
+                return username;
+            }
+
+            @Override
+            public String getPassword() {
+                return "hash";
+            }
+        }));
+    }
+
+    @Test
+    public void givenUser_whenLoadTwice_thenQueryOnce() {
+        UserDetails first = authService.loadUserByUsername(username);
+        UserDetails second = authService.loadUserByUsername(username);
+
+        assertEquals("hash", second.getPassword());
+        assertEquals(first, second);
+        verify(userRepository, times(1)).findCredentialsByUsername(username);
+        verify(userRepository, never()).findTopByUsername(username);
+    }
+
+    @Test
+    public void givenEvictedUser_whenLoad_thenQueryAgain() {
+        authService.loadUserByUsername(username);
+        authService.evict(username);
+        authService.loadUserByUsername(username);
+
+        verify(userRepository, times(2)).findCredentialsByUsername(username);
+    }
+
+    @Test
+    public void givenUnknownUser_whenLoad_thenThrowNotFound() {
+        given(userRepository.findCredentialsByUsername("unknown")).willReturn(Optional.empty());
+
+        Assertions.assertThrows(UsernameNotFoundException.class, () -> authService.loadUserByUsername("unknown"));
+    }
+}
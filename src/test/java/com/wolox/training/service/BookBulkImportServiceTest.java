@@ -0,0 +1,143 @@
+package com.wolox.training.service;
+
+import com.wolox.training.dto.ImportReportDTO;
+import com.wolox.training.models.Book;
+import com.wolox.training.repository.BookRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import({BookBulkImportService.class, BookQueryCache.class})
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, ValidationAutoConfiguration.class})
+@TestPropertySource(properties = {"books.import.batch-size=3", "books.import.max-errors=2"})
+public class BookBulkImportServiceTest {
+
+    @Autowired
+    private BookBulkImportService bookBulkImportService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    public void givenNdjsonOfSeveralBatches_whenImport_thenStoreEveryBook() throws Exception {
+        String body = IntStream.range(0, 10)
+                .mapToObj(i -> ndjson("ISBN" + i, 100 + i))
+                .collect(Collectors.joining("\n"));
+
+        ImportReportDTO report = bookBulkImportService.importBooks(new StringReader(body), BookBulkImportService.Format.NDJSON);
+
+        assertThat(report.getRows()).isEqualTo(10);
+        assertThat(report.getImported()).isEqualTo(10);
+        assertThat(report.getRejected()).isZero();
+        assertThat(bookRepository.count()).isEqualTo(10);
+        assertThat(bookRepository.findByIsbn("ISBN7").map(Book::getPages)).contains(107);
+    }
+
+    @Test
+    public void givenInvalidAndRepeatedRows_whenImport_thenReportThemAndStoreTheRest() throws Exception {
+        entityManager.persistAndFlush(new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "STORED"));
+        String body = String.join("\n",
+                ndjson("ISBN1", 100),
+                "{not json",
+                ndjson("STORED", 100),
+                "",
+                ndjson("ISBN1", 100),
+                "{\"isbn\":\"ISBN2\",\"title\":\"title\"}",
+                ndjson("ISBN3", 100));
+
+        ImportReportDTO report = bookBulkImportService.importBooks(new StringReader(body), BookBulkImportService.Format.NDJSON);
+
+        assertThat(report.getRows()).isEqualTo(6);
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getRejected()).isEqualTo(4);
+        assertThat(report.getErrors()).hasSize(2);
+        assertThat(report.getErrors().get(0).getLine()).isEqualTo(2);
+        assertThat(report.isErrorsTruncated()).isTrue();
+        assertThat(bookRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    public void givenCsvWithQuotedValues_whenImport_thenStoreBooks() throws Exception {
+        String body = String.join("\n",
+                "isbn,title,subTitle,author,publisher,image,year,pages,genre",
+                "ISBN1,\"Title, with comma\",subtitle,author,publisher,image,2020,100,",
+                "ISBN2,\"Title \"\"quoted\"\"\",subtitle,author,publisher,image,2020,120,genre",
+                "ISBN3,title,subtitle,author,publisher,image,2020,0,genre",
+                "ISBN4,title");
+
+        ImportReportDTO report = bookBulkImportService.importBooks(new StringReader(body), BookBulkImportService.Format.CSV);
+
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getErrors()).extracting(ImportReportDTO.RowError::getLine).containsExactly(4L, 5L);
+        Book first = bookRepository.findByIsbn("ISBN1").orElseThrow(AssertionError::new);
+        assertThat(first.getTitle()).isEqualTo("Title, with comma");
+        assertThat(first.getGenre()).isNull();
+        assertThat(bookRepository.findByIsbn("ISBN2").map(Book::getTitle)).contains("Title \"quoted\"");
+    }
+
+    @Test
+    public void givenIsbnWithHyphensAndSpaces_whenImport_thenCompareItNormalized() throws Exception {
+        entityManager.persistAndFlush(new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "0385472579"));
+        String body = String.join("\n",
+                ndjson("0-385-47257-9", 100),
+                ndjson("0451 526538", 100),
+                ndjson("0451526538", 100));
+
+        ImportReportDTO report = bookBulkImportService.importBooks(new StringReader(body), BookBulkImportService.Format.NDJSON);
+
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors()).extracting(ImportReportDTO.RowError::getLine).containsExactlyInAnyOrder(1L, 3L);
+        assertThat(bookRepository.findByIsbn("0451526538")).isPresent();
+        assertThat(bookRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void givenRowRejectedByDatabase_whenImport_thenReportTheActualCause() throws Exception {
+        // Without the transaction of the test the failed batch is rolled back and retried row by row
+        String longTitle = String.join("", Collections.nCopies(300, "t"));
+        String body = String.join("\n",
+                ndjson("ISBN1", 100),
+                ndjson("ISBN2", 100).replace("\"title\":\"title\"", "\"title\":\"" + longTitle + "\""),
+                ndjson("ISBN3", 100));
+
+        try {
+            ImportReportDTO report = bookBulkImportService.importBooks(new StringReader(body), BookBulkImportService.Format.NDJSON);
+
+            assertThat(report.getImported()).isEqualTo(2);
+            assertThat(report.getErrors()).hasSize(1);
+            assertThat(report.getErrors().get(0).getLine()).isEqualTo(2);
+            assertThat(report.getErrors().get(0).getMessage()).doesNotContain("already exists");
+            assertThat(bookRepository.findByIsbn("ISBN2")).isEmpty();
+        } finally {
+            bookRepository.deleteAll();
+        }
+    }
+
+    private static String ndjson(String isbn, int pages) {
+        return "{\"genre\":\"genre\",\"author\":\"author\",\"image\":\"image\",\"title\":\"title\",\"subTitle\":\"subtitle\"," +
+                "\"publisher\":\"publisher\",\"year\":\"2020\",\"pages\":" + pages + ",\"isbn\":\"" + isbn + "\"}";
+    }
+}
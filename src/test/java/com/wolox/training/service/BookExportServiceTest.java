@@ -0,0 +1,89 @@
+package com.wolox.training.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wolox.training.models.Book;
+import com.wolox.training.repository.BookSpecifications;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import(BookExportService.class)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@TestPropertySource(properties = "books.export.fetch-size=10")
+public class BookExportServiceTest {
+
+    private static final int BOOKS = 35;
+
+    @Autowired
+    private BookExportService bookExportService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Book> books = new ArrayList<>();
+
+    @BeforeEach
+    public void init() {
+        for (int i = 0; i < BOOKS; i++) {
+            books.add(entityManager.persist(new Book("genre", "author", "image", "title" + i, "subtitle",
+                    "publisher" + (i % 2), "2020", 100 + i, "isbn" + i)));
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void givenFilter_whenExport_thenWriteFilteredBooksSortedById() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = bookExportService.export(BookSpecifications.filter("publisher1", null, null), out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(written).isEqualTo(BOOKS / 2);
+        assertThat(lines).hasSize(BOOKS / 2);
+        for (int i = 0; i < lines.length; i++) {
+            Book book = objectMapper.readValue(lines[i], Book.class);
+            assertThat(book.getIsbn()).isEqualTo(books.get(i * 2 + 1).getIsbn());
+        }
+    }
+
+    @Test
+    public void givenCatalogLargerThanFetchSize_whenExport_thenKeepAtMostFetchSizeBooksInContext() throws IOException {
+        Session session = entityManager.getEntityManager().unwrap(Session.class);
+        List<Integer> managed = new ArrayList<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                super.write(bytes, offset, length);
+                managed.add(session.getStatistics().getEntityCount());
+            }
+        };
+
+        long written = bookExportService.export(null, out);
+
+        assertThat(written).isEqualTo(BOOKS);
+        assertThat(managed).isNotEmpty().allMatch(count -> count <= 10);
+    }
+}
@@ -0,0 +1,153 @@
+package com.wolox.training.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.wolox.training.config.HttpClientConfig;
+import com.wolox.training.config.ResilienceConfig;
+import com.wolox.training.repository.BookRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+/**
+ * Imports books whose isbn the external api answers slowly with the same few threads, first waiting each response
+ * in the thread that started the import and then without waiting, like the request threads of the isbn endpoint
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+        classes = {BookImportService.class, OpenLibraryService.class, HttpClientConfig.class, ResilienceConfig.class,
+                BookInfoCache.class, BookQueryCache.class},
+        properties = "external.api.url=http://localhost:8092/api/books")
+public class BookImportLoadTest {
+
+    private static final int THREADS = 4;
+    private static final int IMPORTS = 16;
+    private static final int DELAY = 500;
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @MockBean
+    private BookRepository bookRepository;
+
+    public static WireMockServer wireMockServer;
+
+    @BeforeAll
+    public static void setup() {
+        // Enough threads to answer every import at the same time, so the server is never the bottleneck
+        wireMockServer = new WireMockServer(options().port(8092).containerThreads(IMPORTS * 3));
+        wireMockServer.start();
+    }
+
+    @AfterAll
+    public static void teardown() {
+        wireMockServer.stop();
+    }
+
+    @BeforeEach
+    public void init() {
+        wireMockServer.resetAll();
+        given(bookRepository.findByIsbn(any())).willReturn(Optional.empty());
+    }
+
+    @Test
+    public void givenSlowApi_whenImportWithoutWaiting_thenImportMoreAtOnceWithTheSameThreads() throws Exception {
+        List<String> blockingIsbns = isbns("10");
+        List<String> asyncIsbns = isbns("20");
+        blockingIsbns.forEach(this::stub);
+        asyncIsbns.forEach(this::stub);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long blocking = elapsed(() -> {
+            List<Future<BookImportService.Result>> futures = executor.invokeAll(blockingIsbns.stream()
+                    .map(isbn -> (Callable<BookImportService.Result>) () -> bookImportService.importByIsbn(isbn))
+                    .collect(Collectors.toList()));
+            for (Future<BookImportService.Result> future : futures) {
+                assertTrue(future.get().isCreated());
+            }
+            return null;
+        });
+        long async = elapsed(() -> {
+            List<CompletableFuture<BookImportService.Result>> futures = asyncIsbns.stream()
+                    .map(isbn -> CompletableFuture.supplyAsync(() -> bookImportService.importByIsbnAsync(isbn), executor)
+                            .thenCompose(Function.identity()))
+                    .collect(Collectors.toList());
+            for (CompletableFuture<BookImportService.Result> future : futures) {
+                assertTrue(future.get(10, TimeUnit.SECONDS).isCreated());
+            }
+            return null;
+        });
+        executor.shutdown();
+
+        // Waiting in the threads takes a round of the delay every THREADS imports, without waiting a few rounds at most
+        assertTrue("Blocking imports took " + blocking + " ms", blocking >= (long) DELAY * IMPORTS / THREADS);
+        assertTrue("Async imports took " + async + " ms", async * 2 < blocking);
+        wireMockServer.verify(IMPORTS * 2, getRequestedFor(urlMatching("/api/books.*")));
+    }
+
+    @Test
+    public void givenApiResponse_whenImport_thenSaveTheBookOutsideTheCallbackThreads() throws Exception {
+        String isbn = "3000000000";
+        stub(isbn);
+        CompletableFuture<String> saver = new CompletableFuture<>();
+        given(bookRepository.save(any())).willAnswer(invocation -> {
+            saver.complete(Thread.currentThread().getName());
+            return invocation.getArgument(0);
+        });
+
+        assertTrue(bookImportService.importByIsbnAsync(isbn).get(10, TimeUnit.SECONDS).isCreated());
+        assertTrue(saver.get().startsWith("book-import-store-"));
+    }
+
+    private void stub(String isbn) {
+        String book = "{" +
+                "\"title\":\"title " + isbn + "\"," +
+                "\"publishers\":[{\"name\":\"publisher\"}]," +
+                "\"publish_date\":\"2001\"," +
+                "\"number_of_pages\":100," +
+                "\"authors\":[{\"name\":\"author\"}]" +
+                "}";
+        wireMockServer.stubFor(get(urlEqualTo("/api/books?bibkeys=ISBN:" + isbn + "&format=json&jscmd=data"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withStatus(HttpStatus.OK.value())
+                        .withFixedDelay(DELAY)
+                        .withBody("{\"ISBN:" + isbn + "\":" + book + "}")));
+    }
+
+    private static List<String> isbns(String prefix) {
+        return IntStream.range(0, IMPORTS)
+                .mapToObj(i -> prefix + String.format("%08d", i))
+                .collect(Collectors.toList());
+    }
+
+    private static long elapsed(Callable<Void> run) throws Exception {
+        long start = System.nanoTime();
+        run.call();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
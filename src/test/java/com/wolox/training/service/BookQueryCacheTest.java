@@ -0,0 +1,67 @@
+package com.wolox.training.service;
+
+import com.google.common.base.Ticker;
+import com.wolox.training.models.Book;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class BookQueryCacheTest {
+
+    private static final Pageable PAGE = PageRequest.of(0, 10);
+
+    private final AtomicLong now = new AtomicLong();
+    private final BookQueryCache bookQueryCache = new BookQueryCache(100, 60000, 50, new Ticker() {
+        @Override
+        public long read() {
+            return now.get();
+        }
+    });
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void givenCachedPages_whenUnfilteredTtlPasses_thenReloadOnlyTheUnfilteredListing() {
+        Map<String, Object> unfiltered = BookQueryCache.filters(null, null, null, null, null, null, null, null, null, null);
+        Map<String, Object> filtered = BookQueryCache.filters(null, "author", null, null, null, null, null, null, null, null);
+        page(unfiltered);
+        page(filtered);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(50));
+        page(unfiltered);
+        page(filtered);
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void givenCachedPages_whenInvalidateBook_thenReloadTheMatchingListings() {
+        Map<String, Object> author = BookQueryCache.filters(null, "author", null, null, null, null, null, null, null, null);
+        Map<String, Object> other = BookQueryCache.filters(null, "other", null, null, null, null, null, null, null, null);
+        page(author);
+        page(other);
+
+        Book book = new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "isbn");
+        bookQueryCache.invalidate(book);
+        page(author);
+        page(other);
+
+        assertEquals(3, loads.get());
+    }
+
+    private Page<Book> page(Map<String, Object> filters) {
+        return bookQueryCache.page(filters, PAGE, () -> {
+            loads.incrementAndGet();
+            return new PageImpl<>(Collections.emptyList(), PAGE, 0);
+        });
+    }
+}
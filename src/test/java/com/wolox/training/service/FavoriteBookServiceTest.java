@@ -0,0 +1,144 @@
+package com.wolox.training.service;
+
+import com.wolox.training.dto.FavoriteOperationDTO;
+import com.wolox.training.dto.FavoriteResultDTO;
+import com.wolox.training.exception.TooManyOperationsException;
+import com.wolox.training.models.Book;
+import com.wolox.training.models.User;
+import com.wolox.training.repository.UserRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.wolox.training.dto.FavoriteOperationDTO.Action.ADD;
+import static com.wolox.training.dto.FavoriteOperationDTO.Action.REMOVE;
+import static com.wolox.training.dto.FavoriteResultDTO.Status;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+@Import(FavoriteBookService.class)
+@TestPropertySource(properties = "favorites.bulk.max-size=10")
+public class FavoriteBookServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private FavoriteBookService favoriteBookService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @SpyBean
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private User nestor;
+    private User isabel;
+    private Book first;
+    private Book second;
+
+    @BeforeEach
+    public void init() throws Exception {
+        nestor = user("nestor");
+        isabel = user("isabel");
+        first = entityManager.persist(new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "first"));
+        second = entityManager.persist(new Book("genre", "author", "image", "title", "subtitle", "publisher", "2020", 100, "second"));
+        nestor.addBook(first);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void givenOperationsOfManyUsers_whenApply_thenReturnStatusOfEachInOrder() throws Exception {
+        List<FavoriteResultDTO> results = favoriteBookService.apply(Arrays.asList(
+                new FavoriteOperationDTO(nestor.getId(), first.getId(), ADD),
+                new FavoriteOperationDTO(nestor.getId(), second.getId(), ADD),
+                new FavoriteOperationDTO(nestor.getId(), first.getId(), REMOVE),
+                new FavoriteOperationDTO(isabel.getId(), first.getId(), REMOVE),
+                new FavoriteOperationDTO(isabel.getId(), second.getId(), ADD),
+                new FavoriteOperationDTO(isabel.getId(), second.getId(), ADD),
+                new FavoriteOperationDTO(-1, first.getId(), ADD),
+                new FavoriteOperationDTO(isabel.getId(), -1, ADD)
+        ));
+
+        assertThat(results.stream().map(FavoriteResultDTO::getStatus).collect(Collectors.toList())).containsExactly(
+                Status.ALREADY_OWNED, Status.ADDED, Status.REMOVED, Status.NOT_OWNED,
+                Status.ADDED, Status.ALREADY_OWNED, Status.USER_NOT_FOUND, Status.BOOK_NOT_FOUND);
+
+        entityManager.clear();
+        assertThat(userRepository.findById(nestor.getId()).orElseThrow(AssertionError::new).getBooks()).containsExactly(second);
+        assertThat(userRepository.findById(isabel.getId()).orElseThrow(AssertionError::new).getBooks()).containsExactly(second);
+    }
+
+    @Test
+    public void givenAddAndRemoveOfSameBook_whenApply_thenLeaveFavoritesUnchanged() throws Exception {
+        favoriteBookService.apply(Arrays.asList(
+                new FavoriteOperationDTO(isabel.getId(), first.getId(), ADD),
+                new FavoriteOperationDTO(isabel.getId(), first.getId(), REMOVE)
+        ));
+
+        entityManager.clear();
+        assertThat(userRepository.findById(isabel.getId()).orElseThrow(AssertionError::new).getBooks()).isEmpty();
+    }
+
+    @Test
+    public void givenTooManyOperations_whenApply_thenThrowException() {
+        List<FavoriteOperationDTO> operations = Collections.nCopies(11, new FavoriteOperationDTO(nestor.getId(), first.getId(), ADD));
+
+        Assertions.assertThrows(TooManyOperationsException.class, () -> favoriteBookService.apply(operations));
+    }
+
+    @Test
+    public void givenFavoriteAddedAfterTheRead_whenApply_thenReportItAlreadyOwnedAndApplyTheRest() throws Exception {
+        // Another request adds the favorite between the read of the favorites and the inserts
+        AtomicBoolean raced = new AtomicBoolean();
+        doAnswer(invocation -> {
+            Object favorites = invocation.callRealMethod();
+            if (raced.compareAndSet(false, true)) {
+                jdbcTemplate.getJdbcTemplate().update("insert into user_book (book_id, user_id) values (?, ?)", isabel.getId(), second.getId());
+            }
+            return favorites;
+        }).when(jdbcTemplate).query(startsWith("select book_id, user_id from user_book"), any(SqlParameterSource.class), any(RowMapper.class));
+
+        List<FavoriteResultDTO> results = favoriteBookService.apply(Arrays.asList(
+                new FavoriteOperationDTO(isabel.getId(), second.getId(), ADD),
+                new FavoriteOperationDTO(isabel.getId(), first.getId(), ADD)
+        ));
+
+        assertThat(results.stream().map(FavoriteResultDTO::getStatus).collect(Collectors.toList()))
+                .containsExactly(Status.ALREADY_OWNED, Status.ADDED);
+        entityManager.clear();
+        assertThat(userRepository.findById(isabel.getId()).orElseThrow(AssertionError::new).getBooks()).containsExactlyInAnyOrder(first, second);
+    }
+
+    private User user(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setName(username);
+        user.setBirthDate(LocalDate.of(1990, 1, 1));
+        user.setPassword("123456");
+        return entityManager.persist(user);
+    }
+}
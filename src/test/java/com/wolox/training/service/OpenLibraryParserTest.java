@@ -0,0 +1,114 @@
+package com.wolox.training.service;
+
+import com.wolox.training.dto.BookDTO;
+import com.wolox.training.exception.ExternalApiException;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class OpenLibraryParserTest {
+
+    private static final String BOOK = "{" +
+            "\"url\":\"https://openlibrary.org/books/OL1M\"," +
+            "\"title\":\"title\"," +
+            "\"subtitle\":\"subtitle\"," +
+            "\"publishers\":[{\"name\":\"publisher\"}]," +
+            "\"publish_date\":\"2001\"," +
+            "\"number_of_pages\":100," +
+            "\"authors\":[{\"name\":\"author\",\"url\":\"https://openlibrary.org/authors/OL1A\"}]" +
+            "}";
+
+    @Test
+    public void givenBook_whenParse_thenReturnItByIsbn() throws Exception {
+        Map<String, BookDTO> books = parse("{\"ISBN:0385472579\":" + BOOK + "}");
+
+        BookDTO book = books.get("0385472579");
+        assertEquals("title", book.getTitle());
+        assertEquals("subtitle", book.getSubtitle());
+        assertEquals("2001", book.getPublishDate());
+        assertEquals(100, book.getNumberOfPages());
+        assertEquals(Collections.singletonList("publisher"), book.getPublishers());
+        assertEquals(Collections.singletonList("author"), book.getAuthors());
+        assertEquals("https://openlibrary.org/books/OL1M", book.getImageUrl());
+    }
+
+    @Test
+    public void givenBookWithoutRequiredField_whenParse_thenLeaveItOutAndReturnTheRest() throws Exception {
+        String book = BOOK.replace("\"publish_date\":\"2001\",", "");
+
+        Map<String, BookDTO> books = parse("{\"ISBN:0385472579\":" + book + ",\"ISBN:0451526538\":" + BOOK + "}");
+
+        assertEquals(Collections.singleton("0451526538"), books.keySet());
+    }
+
+    @Test
+    public void givenMalformedBody_whenParse_thenThrowExternalApiException() {
+        ExternalApiException e = assertThrows(ExternalApiException.class, () -> parse("{\"ISBN:0385472579\":[]}"));
+        assertTrue(e.getMessage().contains("malformed"));
+    }
+
+    @Test
+    public void givenUnknownAndNestedFields_whenParse_thenSkipThem() throws Exception {
+        String book = "{" +
+                "\"identifiers\":{\"goodreads\":[\"1\"],\"openlibrary\":[\"OL1M\"]}," +
+                "\"subjects\":[{\"name\":\"subject\",\"tags\":[[1,2],{\"title\":\"nested\"}]}]," +
+                "\"ebooks\":null," +
+                BOOK.substring(1, BOOK.length() - 1) + "," +
+                "\"cover\":{\"small\":\"https://covers.openlibrary.org/1-S.jpg\"}" +
+                "}";
+
+        BookDTO parsed = parse("{\"ISBN:0385472579\":" + book + "}").get("0385472579");
+
+        assertEquals("title", parsed.getTitle());
+        assertEquals(Collections.singletonList("author"), parsed.getAuthors());
+    }
+
+    @Test
+    public void givenSeveralBibkeys_whenParse_thenReturnEachBook() throws Exception {
+        Map<String, BookDTO> books = parse("{" +
+                "\"ISBN:0385472579\":" + BOOK + "," +
+                "\"ISBN:0451526538\":" + BOOK.replace("\"title\":\"title\"", "\"title\":\"other\"") +
+                "}");
+
+        assertEquals(2, books.size());
+        assertEquals("title", books.get("0385472579").getTitle());
+        assertEquals("other", books.get("0451526538").getTitle());
+        assertEquals("0451526538", books.get("0451526538").getIsbn());
+    }
+
+    @Test
+    public void givenGzipBody_whenParseDecompressedContent_thenReturnTheBooks() throws Exception {
+        String body = "{\"ISBN:0385472579\":" + BOOK.replace("\"title\":\"title\"", "\"title\":\"Cien años\"") + "}";
+        InputStream content = new GzipDecompressingEntity(new ByteArrayEntity(gzip(body))).getContent();
+
+        Map<String, BookDTO> books = OpenLibraryParser.parse(content, StandardCharsets.UTF_8);
+
+        assertEquals(1, books.size());
+        assertEquals("Cien años", books.get("0385472579").getTitle());
+    }
+
+    private static Map<String, BookDTO> parse(String body) throws IOException, ExternalApiException {
+        return OpenLibraryParser.parse(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,188 @@
+package com.wolox.training.service;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.wolox.training.config.HttpClientConfig;
+import com.wolox.training.config.ResilienceConfig;
+import com.wolox.training.dto.BookDTO;
+import com.wolox.training.exception.ExternalApiException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+        classes = {OpenLibraryService.class, HttpClientConfig.class, ResilienceConfig.class, BookInfoCache.class},
+        properties = {
+                "external.api.url=http://localhost:8091/api/books",
+                "external.api.bulkhead.max-concurrent=1",
+                "external.api.circuit-breaker.window-size=4",
+                "external.api.circuit-breaker.minimum-calls=4",
+                "external.api.retry.max-attempts=2",
+                "external.api.retry.base-delay=10",
+                "external.api.response-buffer=1024"
+        })
+public class OpenLibraryServiceTest {
+
+    @Autowired
+    private OpenLibraryService openLibraryService;
+
+    @Autowired
+    private BookInfoCache bookInfoCache;
+
+    @Autowired
+    private CircuitBreaker circuitBreaker;
+
+    @Autowired
+    private Bulkhead bulkhead;
+
+    @Autowired
+    private CloseableHttpAsyncClient httpClient;
+
+    public static WireMockServer wireMockServer;
+    private final String isbn = "001122331";
+    private final String url = "/api/books?bibkeys=ISBN:" + isbn + "&format=json&jscmd=data";
+
+    @BeforeAll
+    public static void setup() {
+        wireMockServer = new WireMockServer(8091);
+        wireMockServer.start();
+    }
+
+    @AfterAll
+    public static void teardown() {
+        wireMockServer.stop();
+    }
+
+    @BeforeEach
+    public void init() {
+        wireMockServer.resetAll();
+        bookInfoCache.invalidateAll();
+        circuitBreaker.reset();
+    }
+
+    @Test
+    public void givenTransientError_whenBookInfo_thenRetryAndReturnBook() throws Exception {
+        wireMockServer.stubFor(get(urlEqualTo(url))
+                .inScenario("transient")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(HttpStatus.SERVICE_UNAVAILABLE.value()))
+                .willSetStateTo("recovered"));
+        wireMockServer.stubFor(get(urlEqualTo(url))
+                .inScenario("transient")
+                .whenScenarioStateIs("recovered")
+                .willReturn(aResponse().withStatus(HttpStatus.OK.value()).withBodyFile("books.json")));
+
+        BookDTO book = openLibraryService.bookInfo(isbn);
+
+        assertEquals("title 1", book.getTitle());
+        wireMockServer.verify(2, getRequestedFor(urlEqualTo(url)));
+    }
+
+    @Test
+    public void givenServerErrors_whenBookInfo_thenOpenCircuitAndFailFast() {
+        wireMockServer.stubFor(get(urlEqualTo(url))
+                .willReturn(aResponse().withStatus(HttpStatus.INTERNAL_SERVER_ERROR.value())));
+
+        Assertions.assertThrows(ExternalApiException.class, () -> openLibraryService.bookInfo(isbn));
+        Assertions.assertThrows(ExternalApiException.class, () -> openLibraryService.bookInfo(isbn));
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        Assertions.assertThrows(ExternalApiException.class, () -> openLibraryService.bookInfo(isbn));
+        wireMockServer.verify(4, getRequestedFor(urlEqualTo(url)));
+    }
+
+    @Test
+    public void givenSlowApi_whenConcurrentBookInfo_thenRejectCallsOverBulkhead() throws Exception {
+        wireMockServer.stubFor(get(urlEqualTo(url))
+                .willReturn(aResponse().withStatus(HttpStatus.OK.value()).withFixedDelay(1000).withBodyFile("books.json")));
+
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<BookDTO> first = executor.submit(() -> {
+            started.countDown();
+            return openLibraryService.bookInfo(isbn);
+        });
+        started.await();
+        // The first call holds the only permission of the bulkhead until the delayed response arrives
+        while (bulkhead.getMetrics().getAvailableConcurrentCalls() > 0) {
+            Thread.onSpinWait();
+        }
+
+        Assertions.assertThrows(ExternalApiException.class, () -> openLibraryService.bookInfo(isbn));
+        assertEquals("title 1", first.get().getTitle());
+        executor.shutdown();
+    }
+
+    @Test
+    public void givenResponseLargerThanBuffer_whenBookInfo_thenParseEveryBook() throws Exception {
+        List<String> isbns = IntStream.range(0, 50).mapToObj(i -> String.valueOf(1000000000L + i)).collect(Collectors.toList());
+        String body = isbns.stream().map(OpenLibraryServiceTest::book).collect(Collectors.joining(",", "{", "}"));
+        wireMockServer.stubFor(get(urlPathEqualTo("/api/books"))
+                .willReturn(aResponse().withStatus(HttpStatus.OK.value()).withBody(body)));
+
+        Map<String, BookDTO> books = openLibraryService.bookInfo(isbns);
+
+        assertEquals(50, books.size());
+        assertEquals("title 1000000049", books.get("1000000049").getTitle());
+        assertEquals(1, bulkhead.getMetrics().getAvailableConcurrentCalls());
+    }
+
+    @Test
+    public void givenBookWithoutRequiredField_whenBookInfoOfSeveral_thenReturnTheRestAndCacheItNotFound() throws Exception {
+        String body = "{" + book("1000000000").replace("\"publish_date\":\"2001\",", "") + "," + book("1000000001") + "}";
+        wireMockServer.stubFor(get(urlPathEqualTo("/api/books"))
+                .willReturn(aResponse().withStatus(HttpStatus.OK.value()).withBody(body)));
+
+        Map<String, BookDTO> books = openLibraryService.bookInfo(List.of("1000000000", "1000000001"));
+
+        assertEquals(Set.of("1000000001"), books.keySet());
+        assertTrue(bookInfoCache.isNotFound("1000000000"));
+    }
+
+    @Test
+    @DirtiesContext
+    public void givenStoppedClient_whenBookInfo_thenFailAndReleasePermissions() throws Exception {
+        httpClient.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> openLibraryService.bookInfo(isbn));
+        assertEquals(1, bulkhead.getMetrics().getAvailableConcurrentCalls());
+        assertEquals(0, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    private static String book(String isbn) {
+        return "\"ISBN:" + isbn + "\":{" +
+                "\"url\":\"https://openlibrary.org/books/" + isbn + "\"," +
+                "\"title\":\"title " + isbn + "\"," +
+                "\"subtitle\":\"subtitle\"," +
+                "\"publishers\":[{\"name\":\"publisher\"}]," +
+                "\"publish_date\":\"2001\"," +
+                "\"number_of_pages\":100," +
+                "\"authors\":[{\"name\":\"author\"}]}";
+    }
+}
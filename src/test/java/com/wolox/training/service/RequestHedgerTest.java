@@ -0,0 +1,193 @@
+package com.wolox.training.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hedges requests that never finish by themselves, each request sent is completed by the test
+ */
+public class RequestHedgerTest {
+
+    private static final long DELAY = 100;
+    private static final int MIN_SAMPLES = 10;
+
+    private final BlockingQueue<CompletableFuture<String>> attempts = new LinkedBlockingQueue<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private RequestHedger requestHedger;
+
+    @BeforeEach
+    public void init() {
+        attempts.clear();
+    }
+
+    @AfterEach
+    public void teardown() {
+        requestHedger.shutdown();
+    }
+
+    @Test
+    public void givenEnoughSamples_whenRequestTakesLongerThanPercentile_thenSendHedgeAfterDelay() throws Exception {
+        requestHedger = hedger(1, MIN_SAMPLES);
+
+        long start = System.nanoTime();
+        execute();
+        assertNotNull(attempts.poll(1, TimeUnit.SECONDS));
+        assertNotNull(attempts.poll(1, TimeUnit.SECONDS));
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= DELAY);
+        assertEquals(1, count("test.hedges.sent"));
+    }
+
+    @Test
+    public void givenHedgeSent_whenHedgeFinishesFirst_thenReturnItAndCancelTheRequest() throws Exception {
+        requestHedger = hedger(1, MIN_SAMPLES);
+
+        CompletableFuture<String> result = execute();
+        CompletableFuture<String> request = attempts.poll(1, TimeUnit.SECONDS);
+        CompletableFuture<String> hedge = attempts.poll(1, TimeUnit.SECONDS);
+        hedge.complete("hedge");
+
+        assertEquals("hedge", result.get(1, TimeUnit.SECONDS));
+        assertTrue(request.isCancelled());
+        assertEquals(1, count("test.hedges.won"));
+    }
+
+    @Test
+    public void givenHedgeTokensSpent_whenRequestTakesLongerThanPercentile_thenDontHedge() throws Exception {
+        // Half a token per request, so only every other request can be hedged
+        requestHedger = hedger(0.5, MIN_SAMPLES);
+
+        execute();
+        execute();
+        execute();
+        Thread.sleep(DELAY * 3);
+
+        assertEquals(4, attempts.size());
+        assertEquals(1, count("test.hedges.sent"));
+    }
+
+    @Test
+    public void givenFewerSamplesThanMinimum_whenRequestTakesLong_thenDontHedge() throws Exception {
+        requestHedger = hedger(1, MIN_SAMPLES + 1);
+
+        execute();
+        Thread.sleep(DELAY * 3);
+
+        assertEquals(1, attempts.size());
+        assertEquals(0, count("test.hedges.sent"));
+    }
+
+    @Test
+    public void givenTimerShutdown_whenExecute_thenSendRequestWithoutHedge() throws Exception {
+        requestHedger = hedger(1, MIN_SAMPLES);
+        requestHedger.shutdown();
+
+        CompletableFuture<String> result = execute();
+        Thread.sleep(DELAY * 3);
+        assertEquals(1, attempts.size());
+        attempts.poll().complete("request");
+
+        assertEquals("request", result.get(1, TimeUnit.SECONDS));
+        assertEquals(0, count("test.hedges.sent"));
+    }
+
+    @Test
+    public void givenRequestFinishesBeforeDelay_whenExecute_thenReturnItWithoutHedge() throws Exception {
+        requestHedger = hedger(1, MIN_SAMPLES);
+
+        CompletableFuture<String> result = execute();
+        attempts.poll(1, TimeUnit.SECONDS).complete("request");
+        Thread.sleep(DELAY * 3);
+
+        assertEquals("request", result.get(1, TimeUnit.SECONDS));
+        assertTrue(attempts.isEmpty());
+        assertEquals(0, count("test.hedges.sent"));
+    }
+
+    @Test
+    public void givenRequestAndHedgeFail_whenExecute_thenFailWithTheLastError() throws Exception {
+        requestHedger = hedger(1, MIN_SAMPLES);
+
+        CompletableFuture<String> result = execute();
+        CompletableFuture<String> request = attempts.poll(1, TimeUnit.SECONDS);
+        CompletableFuture<String> hedge = attempts.poll(1, TimeUnit.SECONDS);
+        request.completeExceptionally(new IOException("request"));
+        assertFalse(result.isDone());
+        hedge.completeExceptionally(new IOException("hedge"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS));
+        assertEquals("hedge", e.getCause().getMessage());
+    }
+
+    @Test
+    public void givenHedgeSent_whenCallerCancels_thenCancelRequestAndHedge() throws Exception {
+        requestHedger = hedger(1, MIN_SAMPLES);
+
+        CompletableFuture<String> result = execute();
+        CompletableFuture<String> request = attempts.poll(1, TimeUnit.SECONDS);
+        CompletableFuture<String> hedge = attempts.poll(1, TimeUnit.SECONDS);
+        result.cancel(true);
+
+        assertTrue(request.isCancelled());
+        assertTrue(hedge.isCancelled());
+    }
+
+    @Test
+    public void givenStageOnResult_whenHedgeWins_thenRunItWhileTheRequestCanFinish() throws Exception {
+        requestHedger = hedger(1, MIN_SAMPLES);
+
+        CompletableFuture<String> result = execute();
+        CompletableFuture<String> request = attempts.poll(1, TimeUnit.SECONDS);
+        CompletableFuture<String> hedge = attempts.poll(1, TimeUnit.SECONDS);
+        // The stage waits the request finishing in another thread, which would block if the race were still locked
+        CompletableFuture<Boolean> stage = result.thenApply(value -> CompletableFuture
+                .runAsync(() -> request.completeExceptionally(new IOException("request")))
+                .orTimeout(1, TimeUnit.SECONDS)
+                .handle((done, error) -> error == null)
+                .join());
+        hedge.complete("hedge");
+
+        assertTrue(stage.get(2, TimeUnit.SECONDS));
+        assertEquals("hedge", result.get());
+    }
+
+    /**
+     * Creates a hedger that has observed {@link #MIN_SAMPLES} requests of {@link #DELAY} milliseconds
+     */
+    private RequestHedger hedger(double maxRate, int minSamples) {
+        RequestHedger hedger = new RequestHedger("test", true, 95, maxRate, minSamples, 100);
+        for (int i = 0; i < MIN_SAMPLES; i++) {
+            hedger.record(DELAY);
+        }
+        hedger.bindTo(registry);
+        return hedger;
+    }
+
+    private CompletableFuture<String> execute() {
+        return requestHedger.execute(() -> new HttpGet("http://localhost/api/books"), request -> {
+            CompletableFuture<String> attempt = new CompletableFuture<>();
+            attempts.add(attempt);
+            return attempt;
+        });
+    }
+
+    private long count(String name) {
+        return (long) registry.get(name).functionCounter().count();
+    }
+}
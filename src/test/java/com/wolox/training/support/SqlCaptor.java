@@ -0,0 +1,48 @@
+package com.wolox.training.support;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the sql statements prepared by Hibernate in the current thread, registered in the test
+ * application.properties so the tests can assert the queries generated
+ */
+public class SqlCaptor implements StatementInspector {
+
+    private static final ThreadLocal<List<String>> STATEMENTS = ThreadLocal.withInitial(ArrayList::new);
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.get().add(sql);
+        return sql;
+    }
+
+    public static void clear() {
+        STATEMENTS.get().clear();
+    }
+
+    public static List<String> statements() {
+        return new ArrayList<>(STATEMENTS.get());
+    }
+
+    /**
+     * Runs the action and fails when it prepares more statements than expected, listing them, so the N+1 queries
+     * are caught when they are introduced
+     */
+    public static void assertAtMost(int max, Action action) throws Exception {
+        clear();
+        action.run();
+        List<String> statements = statements();
+        if (statements.size() > max) {
+            throw new AssertionError("Expected at most " + max + " statements but were " + statements.size() + ":\n"
+                    + String.join("\n", statements));
+        }
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+}